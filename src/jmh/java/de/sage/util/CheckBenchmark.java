@@ -0,0 +1,208 @@
+package de.sage.util;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.lang.ref.Reference;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * End to end benchmark of full checks against a {@link MockGithubServer}. For every mode and number of checkers all
+ * checkers are started at once and the harness reports throughput, p50/p99 time to result, peak thread count, retained
+ * heap per checker, opened sockets, the body bytes the checkers read and the body bytes the server sent. Bodies closed
+ * unread, like the release page of the public mode, only show in the sent bytes. The heap per checker is only meaningful
+ * for a few hundred checkers and more, below that it is lost in the noise of the garbage collector.
+ * <p>
+ * Run it with: <code>mvn -Pjmh test-compile exec:exec -Djmh.main=de.sage.util.CheckBenchmark -Djmh.args="--checkers 1,100,10000 --latency 20"</code>
+ * <p>
+ * Options: <code>--modes public,redirect,api</code>, <code>--checkers 1,10,100,1000,10000</code>, <code>--latency</code>
+ * in milliseconds, <code>--payload</code> in bytes and <code>--warmup</code> checkers run before the measurement
+ */
+public final class CheckBenchmark {
+
+    private static final String LATEST = "v2.0.0";
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final Traffic traffic = new Traffic();
+    private final OkHttpClient client;
+    private final AtomicInteger run = new AtomicInteger();
+
+    /**
+     * Creates the harness
+     *
+     * @param server the server all checks are sent to
+     */
+    private CheckBenchmark(@NotNull MockGithubServer server) {
+        this.client = server.client(UpdateChecker.getSharedClient().newBuilder().eventListener(traffic).addNetworkInterceptor(traffic::countSent));
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] modes = {"public", "redirect", "api"};
+        int[] counts = {1, 10, 100, 1000, 10000};
+        long latency = 20;
+        int payload = 16 * 1024;
+        int warmup = 1000;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--modes" -> modes = args[i + 1].split(",");
+                case "--checkers" -> counts = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+                case "--latency" -> latency = Long.parseLong(args[i + 1]);
+                case "--payload" -> payload = Integer.parseInt(args[i + 1]);
+                case "--warmup" -> warmup = Integer.parseInt(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i] + "!");
+            }
+        }
+
+        try (MockGithubServer server = new MockGithubServer(Duration.ofMillis(latency), payload, LATEST)) {
+            CheckBenchmark benchmark = new CheckBenchmark(server);
+
+            System.out.printf("latency %d ms, payload %d bytes%n", latency, payload);
+            System.out.printf("%-9s %8s %10s %9s %9s %8s %12s %8s %12s %12s %7s%n",
+                    "mode", "checkers", "checks/s", "p50 ms", "p99 ms", "threads", "heap/chk B", "sockets", "app bytes", "wire bytes", "failed");
+
+            for (String mode : modes) {
+                benchmark.run(mode, warmup);
+
+                for (int count : counts)
+                    System.out.println(benchmark.run(mode, count));
+            }
+
+            System.out.printf("requests answered by the server: %d%n", server.getRequests());
+        }
+    }
+
+    /**
+     * Runs one measurement. Every run uses new repository names, so the release cache of earlier runs is not hit
+     *
+     * @param mode  public, redirect or api
+     * @param count the number of checkers
+     * @return the report line
+     * @throws Exception throws if the checks did not finish
+     */
+    private @NotNull String run(@NotNull String mode, int count) throws Exception {
+        int id = run.incrementAndGet();
+
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+
+        UpdateChecker[] checkers = new UpdateChecker[count];
+        for (int i = 0; i < count; i++) {
+            String name = "repo-" + id + "-" + i;
+
+            checkers[i] = mode.equals("api")
+                    ? new UpdateChecker("bench", name, "1.0.0", false, null, "mock-token", client)
+                    : new UpdateChecker("bench", name, "1.0.0", false, null, client);
+            if (mode.equals("redirect"))
+                checkers[i].setRedirectOnly(true);
+        }
+
+        traffic.reset();
+        threads.resetPeakThreadCount();
+
+        long[] latencies = new long[count];
+        LongAdder failed = new LongAdder();
+        CompletableFuture<?>[] checks = new CompletableFuture<?>[count];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            long checkStart = System.nanoTime();
+
+            checks[i] = checkers[i].checkAsync().whenComplete((result, ex) -> {
+                latencies[index] = System.nanoTime() - checkStart;
+                if (ex != null)
+                    failed.increment();
+            });
+        }
+
+        CompletableFuture.allOf(checks).handle((done, ex) -> null).get(10, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - start;
+        int peakThreads = threads.getPeakThreadCount();
+
+        System.gc();
+        long heapPerChecker = Math.max(0, memory.getHeapMemoryUsage().getUsed() - heapBefore) / count;
+        Reference.reachabilityFence(checkers);
+
+        Arrays.sort(latencies);
+
+        return String.format("%-9s %8d %10.0f %9.2f %9.2f %8d %12d %8d %12d %12d %7d", mode, count,
+                count / (elapsed / 1e9), percentile(latencies, 0.50), percentile(latencies, 0.99), peakThreads,
+                heapPerChecker, traffic.connections.sum(), traffic.bytes.sum(), traffic.sent.sum(), failed.sum());
+    }
+
+    /**
+     * Returns a percentile of sorted latencies
+     *
+     * @param sorted   the sorted latencies in nanoseconds
+     * @param quantile the quantile between 0 and 1
+     * @return the percentile in milliseconds
+     */
+    private static double percentile(long @NotNull [] sorted, double quantile) {
+        int index = Math.max(0, (int) Math.ceil(quantile * sorted.length) - 1);
+        return sorted[index] / 1e6;
+    }
+
+    /**
+     * Counts the opened sockets, the bytes of the response bodies read by the checkers and the ones sent by the server
+     */
+    private static final class Traffic extends EventListener {
+        private final LongAdder connections = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder sent = new LongAdder();
+
+        /**
+         * Network interceptor counting the body bytes the server sent, read or not
+         *
+         * @param chain the interceptor chain
+         * @return the response
+         * @throws IOException throws if the request failed
+         */
+        @NotNull Response countSent(@NotNull Interceptor.Chain chain) throws IOException {
+            Response response = chain.proceed(chain.request());
+
+            long length = response.body() == null ? -1 : response.body().contentLength();
+            if (length > 0 && !chain.request().method().equals("HEAD"))
+                sent.add(length);
+
+            return response;
+        }
+
+        @Override
+        public void connectEnd(@NotNull Call call, @NotNull InetSocketAddress address, @NotNull Proxy proxy, @Nullable Protocol protocol) {
+            connections.increment();
+        }
+
+        @Override
+        public void responseBodyEnd(@NotNull Call call, long byteCount) {
+            bytes.add(byteCount);
+        }
+
+        /**
+         * Resets the counters
+         */
+        void reset() {
+            connections.reset();
+            bytes.reset();
+            sent.reset();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package de.sage.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local stand-in for github.com and api.github.com. It answers the public <code>/releases/latest</code> with a redirect
+ * to the release page and the api with a release json, both after a configurable latency and with a configurable
+ * payload size, so checks can be measured without the network
+ */
+final class MockGithubServer implements AutoCloseable {
+
+    private static final String ETAG = "\"mock-release\"";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMillis;
+    private final byte[] releasePage;
+    private final byte[] releaseJson;
+    private final @NotNull String latest;
+    private final LongAdder requests = new LongAdder();
+
+    /**
+     * Starts the server on a free port of the loopback address
+     *
+     * @param latency     latency added to every answer
+     * @param payloadSize size of the release page and the padding of the release json in bytes
+     * @param latest      tag of the latest release
+     * @throws IOException throws if the server could not be started
+     */
+    MockGithubServer(@NotNull Duration latency, int payloadSize, @NotNull String latest) throws IOException {
+        this.latencyMillis = latency.toMillis();
+        this.latest = latest;
+
+        char[] padding = new char[payloadSize];
+        Arrays.fill(padding, 'x');
+        this.releasePage = ("<html>" + new String(padding) + "</html>").getBytes(StandardCharsets.UTF_8);
+        this.releaseJson = ("{\"url\":\"https://api.github.com/repos/mock/mock/releases/1\",\"id\":1,\"tag_name\":\"" + latest
+                + "\",\"draft\":false,\"prerelease\":false,\"body\":\"" + new String(padding) + "\"}").getBytes(StandardCharsets.UTF_8);
+
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "MockGithubServer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    /**
+     * Derives a client that sends all github requests to this server. The client shares the connections and dispatcher of the base client
+     *
+     * @param base the client to derive from
+     * @return the derived client
+     */
+    @NotNull OkHttpClient client(@NotNull OkHttpClient.Builder base) {
+        int port = server.getAddress().getPort();
+
+        return base.addInterceptor(chain -> {
+            HttpUrl url = chain.request().url();
+
+            if (!url.host().equals("github.com") && !url.host().equals("api.github.com"))
+                return chain.proceed(chain.request());
+
+            HttpUrl local = url.newBuilder().scheme("http").host("127.0.0.1").port(port).build();
+            return chain.proceed(chain.request().newBuilder().url(local).build());
+        }).build();
+    }
+
+    /**
+     * Returns the number of answered requests
+     *
+     * @return the number of requests
+     */
+    long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * Answers a request
+     *
+     * @param exchange the request
+     * @throws IOException throws if the answer could not be sent
+     */
+    private void handle(@NotNull HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.increment();
+            // the jdk server only keeps a connection alive once the request body is consumed
+            exchange.getRequestBody().readAllBytes();
+
+            if (latencyMillis > 0)
+                Thread.sleep(latencyMillis);
+
+            String path = exchange.getRequestURI().getPath();
+            String[] parts = path.split("/");
+            boolean head = exchange.getRequestMethod().equals("HEAD");
+
+            if (parts.length == 6 && parts[1].equals("repos") && path.endsWith("/releases/latest")) {
+                if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    return;
+                }
+
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.getResponseHeaders().add("ETag", ETAG);
+                send(exchange, releaseJson, head);
+            } else if (parts.length == 5 && path.endsWith("/releases/latest")) {
+                exchange.getResponseHeaders().add("Location", "/" + parts[1] + "/" + parts[2] + "/releases/tag/" + latest);
+                exchange.sendResponseHeaders(302, -1);
+            } else if (parts.length == 6 && parts[3].equals("releases") && parts[4].equals("tag")) {
+                exchange.getResponseHeaders().add("Content-Type", "text/html");
+                send(exchange, releasePage, head);
+            } else
+                exchange.sendResponseHeaders(404, -1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends an answer with a body
+     *
+     * @param exchange the request
+     * @param body     the body
+     * @param head     if only the headers are sent
+     * @throws IOException throws if the answer could not be sent
+     */
+    private static void send(@NotNull HttpExchange exchange, byte @NotNull [] body, boolean head) throws IOException {
+        if (head) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
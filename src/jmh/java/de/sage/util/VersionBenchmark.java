@@ -0,0 +1,108 @@
+package de.sage.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing, comparing and sorting of versions over a corpus of realistic github tags. Run it with the gc
+ * profiler, which the jmh profile enables by default, to see the allocation per operation next to the throughput
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VersionBenchmark {
+
+    /**
+     * Tag shapes seen on github: plain, prefixed, calendar versions, pre-releases, snapshots and build metadata
+     */
+    private static final String[] SHAPES = {
+            "v%d.%d.%d", "%d.%d.%d", "%d.%d", "v%d.%d.%d-rc.%d", "%d.%d.%d-beta.%d", "%d.%d.%d-SNAPSHOT",
+            "v%d.%d.%d-dev", "20%d.%d.%d", "v%d.%d.%d+build.%d", "%d.%d.%d.%d"
+    };
+
+    @Param({"1000", "10000"})
+    private int size;
+
+    private String[] tags;
+    private Version[] versions;
+    private Version[] shuffled;
+    private byte[][] sortKeys;
+
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(42);
+
+        tags = new String[size];
+        versions = new Version[size];
+        shuffled = new Version[size];
+        sortKeys = new byte[size][];
+
+        for (int i = 0; i < size; i++) {
+            String shape = SHAPES[random.nextInt(SHAPES.length)];
+            tags[i] = String.format(shape, random.nextInt(5), random.nextInt(20), random.nextInt(30), random.nextInt(12));
+            versions[i] = new Version(tags[i]);
+        }
+
+        for (int i = 0; i < size; i++) {
+            shuffled[i] = versions[random.nextInt(size)];
+            sortKeys[i] = shuffled[i].getSortKey();
+        }
+    }
+
+    @Benchmark
+    public void construct(Blackhole blackhole) {
+        for (String tag : tags)
+            blackhole.consume(new Version(tag));
+    }
+
+    @Benchmark
+    public void constructInterned(Blackhole blackhole) {
+        for (String tag : tags)
+            blackhole.consume(Version.of(tag));
+    }
+
+    @Benchmark
+    public int compareTo() {
+        int sum = 0;
+        for (int i = 1; i < size; i++)
+            sum += versions[i - 1].compareTo(versions[i]);
+        return sum;
+    }
+
+    @Benchmark
+    public int equalsVersion() {
+        int equal = 0;
+        for (int i = 1; i < size; i++) {
+            if (versions[i - 1].equals(shuffled[i]))
+                equal++;
+        }
+        return equal;
+    }
+
+    @Benchmark
+    public void getWithoutSuffix(Blackhole blackhole) {
+        for (Version version : versions)
+            blackhole.consume(version.get(false));
+    }
+
+    @Benchmark
+    public Version[] sort() {
+        Version[] sorted = shuffled.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    @Benchmark
+    public byte[][] sortBySortKey() {
+        byte[][] sorted = sortKeys.clone();
+        Arrays.sort(sorted, Arrays::compareUnsigned);
+        return sorted;
+    }
+}
@@ -0,0 +1,68 @@
+package de.sage.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the single pass version parser with the regex based parsing it replaced
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VersionParseBenchmark {
+
+    /**
+     * Tags as they come from github, all in the format the old parser supported
+     */
+    private static final String[] TAGS = {
+            "v1.0.0", "1.2.3", "v2.14.1", "0.9.12", "v10.4.0", "3.0", "v1.21.4.2", "2024.1.15", "v0.1", "5"
+    };
+
+    @Benchmark
+    public void scanner(Blackhole blackhole) {
+        for (String tag : TAGS)
+            blackhole.consume(new Version(tag));
+    }
+
+    @Benchmark
+    public void legacyRegex(Blackhole blackhole) {
+        for (String tag : TAGS)
+            blackhole.consume(legacyParse(tag));
+    }
+
+    /**
+     * The parsing done before the single pass parser: removing the prefix with a regex, validating with another regex,
+     * lower casing twice for the suffix, removing the suffix and splitting the components with a third regex
+     *
+     * @param tag the tag to parse
+     * @return the parsed components
+     */
+    private static int @NotNull [] legacyParse(@NotNull String tag) {
+        String version = tag.replaceFirst("^v", "");
+
+        if (!version.matches("[0-9]+(\\.[0-9]+)*"))
+            throw new IllegalArgumentException("Invalid version format");
+
+        Version.Type type;
+        if (version.toLowerCase().endsWith("snapshot")) {
+            type = Version.Type.SNAPSHOT;
+        } else if (version.toLowerCase().endsWith("dev")) {
+            type = Version.Type.DEV;
+        } else
+            type = Version.Type.RELEASE;
+
+        String[] parts = version.replace(type.getSuffix(true), "").split("\\.");
+        int[] components = new int[parts.length];
+
+        for (int i = 0; i < parts.length; i++)
+            components[i] = Integer.parseInt(parts[i]);
+
+        return components;
+    }
+}
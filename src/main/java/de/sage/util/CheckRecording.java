@@ -0,0 +1,105 @@
+package de.sage.util;
+
+import jdk.jfr.FlightRecorder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CompletionException;
+
+/**
+ * Flight recorder events of one update check. Nothing is created while the flight recorder was never started, so
+ * checks without recordings only pay for one static check
+ */
+final class CheckRecording {
+
+    private final @NotNull String repository;
+    private final @NotNull String mode;
+    private final UpdateCheckCompleted completed = new UpdateCheckCompleted();
+    private final UpdateCheckFailed failed = new UpdateCheckFailed();
+
+    /**
+     * Creates the events and starts their timing
+     *
+     * @param repository the repository in the format author/name
+     * @param mode       how the latest release is read
+     */
+    private CheckRecording(@NotNull String repository, @NotNull String mode) {
+        this.repository = repository;
+        this.mode = mode;
+
+        completed.begin();
+        failed.begin();
+    }
+
+    /**
+     * Records the start of a check
+     *
+     * @param repository the repository in the format author/name
+     * @param mode       how the latest release is read: public, redirect, api or scan
+     * @return the recording of the check or null if the flight recorder is not running
+     */
+    static @Nullable CheckRecording start(@NotNull String repository, @NotNull String mode) {
+        if (!FlightRecorder.isInitialized())
+            return null;
+
+        UpdateCheckStarted started = new UpdateCheckStarted();
+        if (started.shouldCommit()) {
+            started.repository = repository;
+            started.mode = mode;
+            started.commit();
+        }
+
+        return new CheckRecording(repository, mode);
+    }
+
+    /**
+     * Records a check that finished with a result
+     *
+     * @param result the result of the check
+     * @param trace  the trace of the requests
+     */
+    void completed(@NotNull UpdateResult result, @NotNull CheckTrace trace) {
+        completed.end();
+        if (!completed.shouldCommit())
+            return;
+
+        completed.repository = repository;
+        completed.mode = mode;
+        completed.dns = trace.getDnsNanos();
+        completed.connect = trace.getConnectNanos();
+        completed.tls = trace.getTlsNanos();
+        completed.timeToFirstByte = trace.getTimeToFirstByteNanos();
+        completed.bytesRead = trace.getBytesRead();
+        completed.statusCode = trace.getStatusCode();
+        completed.cacheOutcome = trace.getCacheOutcome().getLabel();
+        completed.latestVersion = result.getLatestVersion();
+        completed.updateAvailable = result.isUpdateAvailable();
+        completed.commit();
+    }
+
+    /**
+     * Records a failed check
+     *
+     * @param failure the cause of the failure
+     * @param trace   the trace of the requests
+     */
+    void failed(@NotNull Throwable failure, @NotNull CheckTrace trace) {
+        failed.end();
+        if (!failed.shouldCommit())
+            return;
+
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+
+        failed.repository = repository;
+        failed.mode = mode;
+        failed.dns = trace.getDnsNanos();
+        failed.connect = trace.getConnectNanos();
+        failed.tls = trace.getTlsNanos();
+        failed.timeToFirstByte = trace.getTimeToFirstByteNanos();
+        failed.bytesRead = trace.getBytesRead();
+        failed.statusCode = trace.getStatusCode();
+        failed.cacheOutcome = trace.getCacheOutcome().getLabel();
+        failed.failure = cause.getClass().getSimpleName() + ": " + cause.getMessage();
+        failed.commit();
+    }
+}
@@ -0,0 +1,153 @@
+package de.sage.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+
+/**
+ * Immutable time spent in the network phases of a check. Phases of several requests, like the pages of a release
+ * scan, are added up
+ *
+ * @author SageSphinx63920
+ */
+public final class CheckTiming {
+
+    private final long[] nanos;
+    private final long bytesRead;
+
+    /**
+     * Creates a timing
+     *
+     * @param nanos     the nanoseconds per phase, indexed by the ordinal of {@link Phase}
+     * @param bytesRead the bytes of the response bodies that were read
+     */
+    CheckTiming(long @NotNull [] nanos, long bytesRead) {
+        this.nanos = nanos;
+        this.bytesRead = bytesRead;
+    }
+
+    /**
+     * Returns the time spent in a phase
+     *
+     * @param phase the phase
+     * @return the time spent in the phase, zero if the phase did not happen
+     */
+    public @NotNull Duration get(@NotNull Phase phase) {
+        return Duration.ofNanos(nanos[phase.ordinal()]);
+    }
+
+    /**
+     * Returns the time spent resolving host names
+     *
+     * @return the dns time, zero if a pooled connection was used
+     */
+    public @NotNull Duration getDns() {
+        return get(Phase.DNS);
+    }
+
+    /**
+     * Returns the time spent opening connections, including the tls handshakes
+     *
+     * @return the connect time, zero if a pooled connection was used
+     */
+    public @NotNull Duration getConnect() {
+        return get(Phase.CONNECT);
+    }
+
+    /**
+     * Returns the time spent in tls handshakes
+     *
+     * @return the tls time, zero if a pooled connection was used
+     */
+    public @NotNull Duration getTls() {
+        return get(Phase.TLS);
+    }
+
+    /**
+     * Returns the time spent in followed redirects, from sending the redirected request until sending the next one
+     *
+     * @return the redirect time, zero if no redirect was followed
+     */
+    public @NotNull Duration getRedirect() {
+        return get(Phase.REDIRECT);
+    }
+
+    /**
+     * Returns the time from sending the final request until the first byte of its response
+     *
+     * @return the time to first byte
+     */
+    public @NotNull Duration getTimeToFirstByte() {
+        return get(Phase.TIME_TO_FIRST_BYTE);
+    }
+
+    /**
+     * Returns the time spent reading response bodies
+     *
+     * @return the body transfer time
+     */
+    public @NotNull Duration getBodyTransfer() {
+        return get(Phase.BODY_TRANSFER);
+    }
+
+    /**
+     * Returns the time of the whole http calls
+     *
+     * @return the total time
+     */
+    public @NotNull Duration getTotal() {
+        return get(Phase.TOTAL);
+    }
+
+    /**
+     * Returns the bytes of the response bodies that were read, also if a body was closed before its end
+     *
+     * @return the bytes read
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("CheckTiming{");
+        for (Phase phase : Phase.values())
+            builder.append(phase.name().toLowerCase()).append('=').append(get(phase)).append(", ");
+
+        return builder.append("bytesRead=").append(bytesRead).append('}').toString();
+    }
+
+    /**
+     * Network phase of a check
+     */
+    public enum Phase {
+        /**
+         * Resolving host names
+         */
+        DNS,
+        /**
+         * Opening connections, including the tls handshakes
+         */
+        CONNECT,
+        /**
+         * Tls handshakes
+         */
+        TLS,
+        /**
+         * Followed redirects, for example the redirect of the public latest release page
+         */
+        REDIRECT,
+        /**
+         * Waiting for the first byte of the final response
+         */
+        TIME_TO_FIRST_BYTE,
+        /**
+         * Reading response bodies
+         */
+        BODY_TRANSFER,
+        /**
+         * The whole http calls
+         */
+        TOTAL
+    }
+}
@@ -0,0 +1,444 @@
+package de.sage.util;
+
+import okhttp3.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+/**
+ * What happened on the wire during the requests of one check. The checker tags its requests with a trace, and the
+ * {@link Factory} installed on its client fills it from the okhttp events of the calls. Redirects and further pages add
+ * up in the same trace.
+ * <p>
+ * A trace is written by the thread running the call and read after the check completed
+ */
+final class CheckTrace {
+
+    private long callStart;
+    private long dnsStart;
+    private long connectStart;
+    private long secureConnectStart;
+    private long requestStart;
+    private long bodyStart;
+    private long redirectStart;
+    private long redirectTimeToFirstByte;
+    private long hopTimeToFirstByte;
+
+    private final long[] nanos = new long[CheckTiming.Phase.values().length];
+    private int calls;
+    private long bytesRead;
+    private int statusCode;
+    private @NotNull CacheOutcome cacheOutcome = CacheOutcome.NONE;
+    private volatile @Nullable CheckTrace answeredBy;
+
+    /**
+     * Returns the time spent resolving host names
+     *
+     * @return the dns time in nanoseconds
+     */
+    long getDnsNanos() {
+        return nanos[CheckTiming.Phase.DNS.ordinal()];
+    }
+
+    /**
+     * Returns the time spent opening connections, including the tls handshakes
+     *
+     * @return the connect time in nanoseconds
+     */
+    long getConnectNanos() {
+        return nanos[CheckTiming.Phase.CONNECT.ordinal()];
+    }
+
+    /**
+     * Returns the time spent in tls handshakes
+     *
+     * @return the tls time in nanoseconds
+     */
+    long getTlsNanos() {
+        return nanos[CheckTiming.Phase.TLS.ordinal()];
+    }
+
+    /**
+     * Returns the time from sending the final requests until the first byte of their responses
+     *
+     * @return the time to first byte in nanoseconds
+     */
+    long getTimeToFirstByteNanos() {
+        return nanos[CheckTiming.Phase.TIME_TO_FIRST_BYTE.ordinal()];
+    }
+
+    /**
+     * Returns the bytes of the response bodies that were read, also if a body was closed before its end
+     *
+     * @return the bytes read
+     */
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Returns the status code of the last response
+     *
+     * @return the status code or 0 if there was no response
+     */
+    int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Returns how the release cache answered the check
+     *
+     * @return the cache outcome
+     */
+    @NotNull CacheOutcome getCacheOutcome() {
+        return cacheOutcome;
+    }
+
+    /**
+     * Sets how the release cache answered the check
+     *
+     * @param cacheOutcome the cache outcome
+     */
+    void setCacheOutcome(@NotNull CacheOutcome cacheOutcome) {
+        this.cacheOutcome = cacheOutcome;
+    }
+
+    /**
+     * Marks the trace of another request, a hedge or a fallback, as the one that answered the check
+     *
+     * @param other the trace of the other request, can be null
+     */
+    void answeredBy(@Nullable CheckTrace other) {
+        this.answeredBy = other;
+    }
+
+    /**
+     * Returns the trace of the request that answered the check
+     *
+     * @return the trace of the hedge or fallback that answered, else this trace
+     */
+    @NotNull CheckTrace answered() {
+        CheckTrace other = this.answeredBy;
+        return other != null ? other.answered() : this;
+    }
+
+    /**
+     * Returns if a call was started for the check
+     *
+     * @return true if there was at least one call
+     */
+    boolean hasCalls() {
+        return calls > 0;
+    }
+
+    /**
+     * Copies the phase timings of the trace
+     *
+     * @return the timing
+     */
+    @NotNull CheckTiming toTiming() {
+        return new CheckTiming(nanos.clone(), bytesRead);
+    }
+
+    /**
+     * Adds the time since a start to a phase
+     *
+     * @param phase the phase
+     * @param start the nano time the phase started
+     */
+    private void add(@NotNull CheckTiming.Phase phase, long start) {
+        nanos[phase.ordinal()] += System.nanoTime() - start;
+    }
+
+    /**
+     * Ends the timing of a call. A redirect that was not followed is the final response, so it stays time to first byte
+     */
+    private void end() {
+        add(CheckTiming.Phase.TOTAL, callStart);
+        redirectStart = 0;
+    }
+
+    /**
+     * Returns the trace of a call
+     *
+     * @param call the call
+     * @return the trace or null if the request was not tagged with one
+     */
+    static @Nullable CheckTrace of(@NotNull Call call) {
+        return call.request().tag(CheckTrace.class);
+    }
+
+    /**
+     * Creates the listeners of the calls. Calls without a trace get the listener of the wrapped factory only
+     */
+    static final class Factory implements EventListener.Factory {
+        private final @NotNull EventListener.Factory delegate;
+
+        /**
+         * Creates the factory
+         *
+         * @param delegate the factory of the listener that keeps getting all events
+         */
+        Factory(@NotNull EventListener.Factory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public @NotNull EventListener create(@NotNull Call call) {
+            EventListener listener = delegate.create(call);
+            CheckTrace trace = of(call);
+
+            return trace == null ? listener : new Listener(trace, listener);
+        }
+    }
+
+    /**
+     * Fills a trace and forwards every event to the wrapped listener
+     */
+    private static final class Listener extends EventListener {
+        private final @NotNull CheckTrace trace;
+        private final @NotNull EventListener delegate;
+
+        /**
+         * Creates the listener
+         *
+         * @param trace    the trace to fill
+         * @param delegate the listener that keeps getting all events
+         */
+        private Listener(@NotNull CheckTrace trace, @NotNull EventListener delegate) {
+            this.trace = trace;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void callStart(@NotNull Call call) {
+            trace.calls++;
+            trace.callStart = System.nanoTime();
+            delegate.callStart(call);
+        }
+
+        @Override
+        public void proxySelectStart(@NotNull Call call, @NotNull HttpUrl url) {
+            delegate.proxySelectStart(call, url);
+        }
+
+        @Override
+        public void proxySelectEnd(@NotNull Call call, @NotNull HttpUrl url, @NotNull List<Proxy> proxies) {
+            delegate.proxySelectEnd(call, url, proxies);
+        }
+
+        @Override
+        public void dnsStart(@NotNull Call call, @NotNull String domainName) {
+            trace.dnsStart = System.nanoTime();
+            delegate.dnsStart(call, domainName);
+        }
+
+        @Override
+        public void dnsEnd(@NotNull Call call, @NotNull String domainName, @NotNull List<InetAddress> addresses) {
+            trace.add(CheckTiming.Phase.DNS, trace.dnsStart);
+            delegate.dnsEnd(call, domainName, addresses);
+        }
+
+        @Override
+        public void connectStart(@NotNull Call call, @NotNull InetSocketAddress address, @NotNull Proxy proxy) {
+            trace.connectStart = System.nanoTime();
+            delegate.connectStart(call, address, proxy);
+        }
+
+        @Override
+        public void secureConnectStart(@NotNull Call call) {
+            trace.secureConnectStart = System.nanoTime();
+            delegate.secureConnectStart(call);
+        }
+
+        @Override
+        public void secureConnectEnd(@NotNull Call call, @Nullable Handshake handshake) {
+            trace.add(CheckTiming.Phase.TLS, trace.secureConnectStart);
+            delegate.secureConnectEnd(call, handshake);
+        }
+
+        @Override
+        public void connectEnd(@NotNull Call call, @NotNull InetSocketAddress address, @NotNull Proxy proxy, @Nullable Protocol protocol) {
+            trace.add(CheckTiming.Phase.CONNECT, trace.connectStart);
+            delegate.connectEnd(call, address, proxy, protocol);
+        }
+
+        @Override
+        public void connectFailed(@NotNull Call call, @NotNull InetSocketAddress address, @NotNull Proxy proxy, @Nullable Protocol protocol, @NotNull IOException ioe) {
+            trace.add(CheckTiming.Phase.CONNECT, trace.connectStart);
+            delegate.connectFailed(call, address, proxy, protocol, ioe);
+        }
+
+        @Override
+        public void connectionAcquired(@NotNull Call call, @NotNull Connection connection) {
+            delegate.connectionAcquired(call, connection);
+        }
+
+        @Override
+        public void connectionReleased(@NotNull Call call, @NotNull Connection connection) {
+            delegate.connectionReleased(call, connection);
+        }
+
+        @Override
+        public void requestHeadersStart(@NotNull Call call) {
+            // a request after a redirect response follows it, so the redirected request counts as redirect time
+            if (trace.redirectStart != 0) {
+                trace.add(CheckTiming.Phase.REDIRECT, trace.redirectStart);
+                trace.nanos[CheckTiming.Phase.TIME_TO_FIRST_BYTE.ordinal()] -= trace.redirectTimeToFirstByte;
+                trace.redirectStart = 0;
+            }
+
+            trace.requestStart = System.nanoTime();
+            delegate.requestHeadersStart(call);
+        }
+
+        @Override
+        public void requestHeadersEnd(@NotNull Call call, @NotNull Request request) {
+            delegate.requestHeadersEnd(call, request);
+        }
+
+        @Override
+        public void requestBodyStart(@NotNull Call call) {
+            delegate.requestBodyStart(call);
+        }
+
+        @Override
+        public void requestBodyEnd(@NotNull Call call, long byteCount) {
+            delegate.requestBodyEnd(call, byteCount);
+        }
+
+        @Override
+        public void requestFailed(@NotNull Call call, @NotNull IOException ioe) {
+            delegate.requestFailed(call, ioe);
+        }
+
+        @Override
+        public void responseHeadersStart(@NotNull Call call) {
+            trace.hopTimeToFirstByte = System.nanoTime() - trace.requestStart;
+            trace.nanos[CheckTiming.Phase.TIME_TO_FIRST_BYTE.ordinal()] += trace.hopTimeToFirstByte;
+            delegate.responseHeadersStart(call);
+        }
+
+        @Override
+        public void responseHeadersEnd(@NotNull Call call, @NotNull Response response) {
+            trace.statusCode = response.code();
+            if (response.isRedirect()) {
+                trace.redirectStart = trace.requestStart;
+                trace.redirectTimeToFirstByte = trace.hopTimeToFirstByte;
+            }
+            delegate.responseHeadersEnd(call, response);
+        }
+
+        @Override
+        public void responseBodyStart(@NotNull Call call) {
+            trace.bodyStart = System.nanoTime();
+            delegate.responseBodyStart(call);
+        }
+
+        @Override
+        public void responseBodyEnd(@NotNull Call call, long byteCount) {
+            trace.bytesRead += byteCount;
+            if (trace.bodyStart != 0)
+                trace.add(CheckTiming.Phase.BODY_TRANSFER, trace.bodyStart);
+            trace.bodyStart = 0;
+            delegate.responseBodyEnd(call, byteCount);
+        }
+
+        @Override
+        public void responseFailed(@NotNull Call call, @NotNull IOException ioe) {
+            delegate.responseFailed(call, ioe);
+        }
+
+        @Override
+        public void callEnd(@NotNull Call call) {
+            trace.end();
+            delegate.callEnd(call);
+        }
+
+        @Override
+        public void callFailed(@NotNull Call call, @NotNull IOException ioe) {
+            trace.end();
+            delegate.callFailed(call, ioe);
+        }
+
+        @Override
+        public void canceled(@NotNull Call call) {
+            delegate.canceled(call);
+        }
+
+        @Override
+        public void satisfactionFailure(@NotNull Call call, @NotNull Response response) {
+            delegate.satisfactionFailure(call, response);
+        }
+
+        @Override
+        public void cacheHit(@NotNull Call call, @NotNull Response cachedResponse) {
+            delegate.cacheHit(call, cachedResponse);
+        }
+
+        @Override
+        public void cacheMiss(@NotNull Call call) {
+            delegate.cacheMiss(call);
+        }
+
+        @Override
+        public void cacheConditionalHit(@NotNull Call call, @NotNull Response cachedResponse) {
+            delegate.cacheConditionalHit(call, cachedResponse);
+        }
+    }
+
+    /**
+     * How the release cache answered a check
+     */
+    enum CacheOutcome {
+        /**
+         * The check does not use the cache
+         */
+        NONE("none"),
+        /**
+         * The release was downloaded
+         */
+        MISS("miss"),
+        /**
+         * Github answered a conditional request with <i>304 Not Modified</i> and the cached release was reused
+         */
+        NOT_MODIFIED("not modified"),
+        /**
+         * The rate limit budget is used up, so the last result was reused without a request
+         */
+        LAST_RESULT("last result"),
+        /**
+         * Every other source of the fallback chain failed, so the cached release was used
+         */
+        FALLBACK("fallback"),
+        /**
+         * The check joined the request of a running check, which reports the timing of the request
+         */
+        COALESCED("coalesced");
+
+        private final @NotNull String label;
+
+        /**
+         * Creates an outcome
+         *
+         * @param label the label shown in recordings
+         */
+        CacheOutcome(@NotNull String label) {
+            this.label = label;
+        }
+
+        /**
+         * Returns the label shown in recordings
+         *
+         * @return the label
+         */
+        @NotNull String getLabel() {
+            return label;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package de.sage.util;
+
+import okhttp3.Call;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timeouts of the requests of a check. Requests are tagged with their deadlines, so one client serves checkers with
+ * different deadlines. A missing timeout keeps the one of the client
+ *
+ * @param connect timeout of opening a connection, can be null
+ * @param read    timeout between two reads of the response, can be null
+ * @param call    deadline of the whole call including redirects, can be null
+ */
+record Deadlines(@Nullable Duration connect, @Nullable Duration read, @Nullable Duration call) {
+
+    /**
+     * Application interceptor applying the connect and read timeouts of the tagged requests
+     */
+    static final Interceptor INTERCEPTOR = chain -> {
+        Deadlines deadlines = chain.request().tag(Deadlines.class);
+        if (deadlines == null)
+            return chain.proceed(chain.request());
+
+        Interceptor.Chain configured = chain;
+        if (deadlines.connect() != null)
+            configured = configured.withConnectTimeout((int) deadlines.connect().toMillis(), TimeUnit.MILLISECONDS);
+        if (deadlines.read() != null)
+            configured = configured.withReadTimeout((int) deadlines.read().toMillis(), TimeUnit.MILLISECONDS);
+
+        return configured.proceed(chain.request());
+    };
+
+    /**
+     * Validates the timeouts
+     *
+     * @throws IllegalArgumentException throws if a timeout is shorter than one millisecond or longer than {@link Integer#MAX_VALUE} milliseconds
+     */
+    Deadlines {
+        validate(connect, "connect");
+        validate(read, "read");
+        validate(call, "call");
+    }
+
+    /**
+     * Combines the deadlines of a checker with the default ones. Timeouts missing in the checker's deadlines are taken from the defaults
+     *
+     * @param deadlines the deadlines of the checker, can be null
+     * @param defaults  the default deadlines, can be null
+     * @return the combined deadlines or null if neither sets a timeout
+     */
+    static @Nullable Deadlines combine(@Nullable Deadlines deadlines, @Nullable Deadlines defaults) {
+        if (deadlines == null)
+            return defaults;
+        if (defaults == null)
+            return deadlines;
+
+        return new Deadlines(deadlines.connect() != null ? deadlines.connect() : defaults.connect(),
+                deadlines.read() != null ? deadlines.read() : defaults.read(),
+                deadlines.call() != null ? deadlines.call() : defaults.call());
+    }
+
+    /**
+     * Sets the call deadline of a call to the one of its request
+     *
+     * @param call the call, not yet enqueued
+     */
+    static void apply(@NotNull Call call) {
+        Deadlines deadlines = call.request().tag(Deadlines.class);
+
+        if (deadlines != null && deadlines.call() != null)
+            call.timeout().timeout(deadlines.call().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Checks that a timeout is at least one millisecond, shorter ones are truncated to 0 which the http client treats as
+     * no timeout, and fits into the int milliseconds of the http client
+     *
+     * @param timeout the timeout, can be null
+     * @param name    the name of the timeout, used for the error message
+     */
+    private static void validate(@Nullable Duration timeout, @NotNull String name) {
+        if (timeout == null)
+            return;
+
+        if (timeout.compareTo(Duration.ofMillis(1)) < 0)
+            throw new IllegalArgumentException("The " + name + " timeout has to be at least one millisecond!");
+        if (timeout.compareTo(Duration.ofMillis(Integer.MAX_VALUE)) > 0)
+            throw new IllegalArgumentException("The " + name + " timeout can be at most " + Integer.MAX_VALUE + " milliseconds!");
+    }
+
+    /**
+     * Tags a request with deadlines
+     *
+     * @param builder   the request builder
+     * @param deadlines the deadlines, null to keep the timeouts of the client
+     * @return the builder
+     */
+    static @NotNull Request.Builder tag(@NotNull Request.Builder builder, @Nullable Deadlines deadlines) {
+        return deadlines == null ? builder : builder.tag(Deadlines.class, deadlines);
+    }
+}
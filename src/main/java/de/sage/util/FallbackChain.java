@@ -0,0 +1,116 @@
+package de.sage.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Sources of the latest release tried one after another. Every source has an own time budget, a source that fails or
+ * runs out of its budget is cancelled and the next one is tried. The first result wins
+ *
+ * @param <T> the type of the result
+ */
+final class FallbackChain<T> {
+
+    private final List<Step<T>> steps = new ArrayList<>();
+    private volatile @Nullable CompletableFuture<T> current;
+
+    /**
+     * Adds a source to the end of the chain
+     *
+     * @param source starts the source. Returning null skips the source, for example if there is nothing cached
+     * @param budget how long the source may take, null for no own budget
+     * @return this chain
+     */
+    @NotNull FallbackChain<T> then(@NotNull Supplier<@Nullable CompletableFuture<T>> source, @Nullable Duration budget) {
+        steps.add(new Step<>(source, budget));
+        return this;
+    }
+
+    /**
+     * Starts the first source
+     *
+     * @return future completed with the first result, or exceptionally with the failure of the first source that was
+     * tried, the failures of the later sources are added as suppressed. Completing it exceptionally, for example by
+     * cancelling it, cancels the running source and stops the chain
+     */
+    @NotNull CompletableFuture<T> start() {
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        result.whenComplete((done, ex) -> {
+            CompletableFuture<T> current = this.current;
+            if (ex != null && current != null)
+                current.cancel(true);
+        });
+
+        attempt(0, result, null);
+        return result;
+    }
+
+    /**
+     * Tries a source
+     *
+     * @param index   the index of the source
+     * @param result  the future of the chain
+     * @param failure the failure of the first source that failed, null if none failed yet
+     */
+    private void attempt(int index, @NotNull CompletableFuture<T> result, @Nullable Throwable failure) {
+        if (result.isDone())
+            return;
+
+        if (index == steps.size()) {
+            result.completeExceptionally(failure != null ? failure : new IllegalStateException("There is no source to check for updates!"));
+            return;
+        }
+
+        Step<T> step = steps.get(index);
+        CompletableFuture<T> attempt;
+        try {
+            attempt = step.source().get();
+        } catch (RuntimeException e) {
+            attempt = CompletableFuture.failedFuture(e);
+        }
+
+        if (attempt == null) {
+            attempt(index + 1, result, failure);
+            return;
+        }
+
+        if (step.budget() != null)
+            attempt.orTimeout(step.budget().toMillis(), TimeUnit.MILLISECONDS);
+
+        current = attempt;
+        if (result.isDone())
+            attempt.cancel(true);
+
+        attempt.whenComplete((done, ex) -> {
+            if (ex == null) {
+                result.complete(done);
+                return;
+            }
+
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            if (failure != null && failure != cause)
+                failure.addSuppressed(cause);
+
+            attempt(index + 1, result, failure != null ? failure : cause);
+        });
+    }
+
+    /**
+     * Source of the chain
+     *
+     * @param source starts the source
+     * @param budget how long the source may take, can be null
+     * @param <T>    the type of the result
+     */
+    private record Step<T>(@NotNull Supplier<@Nullable CompletableFuture<T>> source, @Nullable Duration budget) {
+    }
+}
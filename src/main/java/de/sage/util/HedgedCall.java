@@ -0,0 +1,224 @@
+package de.sage.util;
+
+import okhttp3.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Request that is sent a second time if its response takes longer than the usual p95 of its host. The first response
+ * is passed on and the other call is cancelled, so the tail latency of one slow connection does not stall a check.
+ * <p>
+ * Hedges are capped globally to a share of the recently sent requests, so a slow github can not double the load. Every
+ * sent request adds its share of a hedge to a budget holding at most {@link #MAX_BURST} hedges, every hedge takes one
+ * from it. A long quiet period therefore never saves up hedges for a later burst. A host is only hedged once enough
+ * responses were seen to know its p95
+ */
+final class HedgedCall {
+
+    /**
+     * Responses of a host needed before its requests are hedged
+     */
+    static final int MIN_SAMPLES = 20;
+    /**
+     * Lowest delay before a hedge is sent, in milliseconds
+     */
+    static final long MIN_DELAY_MILLIS = 20;
+    /**
+     * Highest number of hedges the budget holds
+     */
+    static final int MAX_BURST = 10;
+
+    /**
+     * Budget units of one hedge, the budget is kept in fractions of a hedge
+     */
+    static final long HEDGE_COST = 1_000_000;
+
+    private static final Map<String, LatencyHistogram> LATENCY = new ConcurrentHashMap<>();
+    private static final AtomicLong BUDGET = new AtomicLong();
+    private static volatile long refill = ratioToUnits(0.05);
+
+    private final @NotNull OkHttpClient client;
+    private final @NotNull Request request;
+    private final @NotNull Callback callback;
+    private final @NotNull Call primary;
+    private final AtomicBoolean answered = new AtomicBoolean();
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private final long start = System.nanoTime();
+    private volatile @Nullable Call hedge;
+
+    /**
+     * Creates the call
+     *
+     * @param client   the client
+     * @param request  the request, tagged with a {@link CheckTrace}
+     * @param callback the callback getting the first response, or the last failure if every call failed
+     */
+    private HedgedCall(@NotNull OkHttpClient client, @NotNull Request request, @NotNull Callback callback) {
+        this.client = client;
+        this.request = request;
+        this.callback = callback;
+        this.primary = client.newCall(request);
+        Deadlines.apply(primary);
+    }
+
+    /**
+     * Sets the highest share of requests that may be hedged, for all checkers
+     *
+     * @param ratio the share between 0 and 1
+     * @throws IllegalArgumentException throws if the share is not between 0 and 1
+     */
+    static void setMaxRatio(double ratio) {
+        if (ratio < 0 || ratio > 1)
+            throw new IllegalArgumentException("The hedge ratio has to be between 0 and 1!");
+
+        refill = ratioToUnits(ratio);
+    }
+
+    /**
+     * Converts a share of requests to the budget units added per sent request
+     *
+     * @param ratio the share between 0 and 1
+     * @return the budget units
+     */
+    private static long ratioToUnits(double ratio) {
+        return Math.round(ratio * HEDGE_COST);
+    }
+
+    /**
+     * Enqueues a request
+     *
+     * @param client      the client
+     * @param request     the request, tagged with a {@link CheckTrace}
+     * @param callback    the callback getting the first response, or the last failure if every call failed
+     * @param result      the future of the check. Completing it exceptionally, for example by cancelling it, cancels the calls still running
+     * @param hedged      if the request may be hedged
+     * @param beforeHedge called before a hedge is sent, for example to take it from the rate limit budget. Returning false drops the hedge
+     */
+    static void enqueue(@NotNull OkHttpClient client, @NotNull Request request, @NotNull Callback callback, @NotNull CompletableFuture<?> result,
+                        boolean hedged, @NotNull BooleanSupplier beforeHedge) {
+        HedgedCall call = new HedgedCall(client, request, callback);
+        requestSent();
+
+        result.whenComplete((done, ex) -> {
+            if (ex != null)
+                call.cancel();
+        });
+        call.primary.enqueue(call.new Attempt());
+
+        if (!hedged)
+            return;
+
+        LatencyHistogram latency = LATENCY.get(request.url().host());
+        if (latency == null || latency.getCount() < MIN_SAMPLES)
+            return;
+
+        long delay = Math.max(MIN_DELAY_MILLIS, latency.percentileMicros(0.95) / 1000);
+        CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> {
+            if (result.isDone() || call.answered.get() || !reserveHedge())
+                return;
+
+            if (!beforeHedge.getAsBoolean()) {
+                addBudget(HEDGE_COST);
+                return;
+            }
+
+            call.sendHedge();
+        });
+    }
+
+    /**
+     * Adds the share of a hedge of one sent request to the global budget
+     */
+    static void requestSent() {
+        addBudget(refill);
+    }
+
+    /**
+     * Takes a hedge from the global budget
+     *
+     * @return true if a hedge may be sent
+     */
+    static boolean reserveHedge() {
+        return BUDGET.getAndUpdate(budget -> budget >= HEDGE_COST ? budget - HEDGE_COST : budget) >= HEDGE_COST;
+    }
+
+    /**
+     * Adds to the global budget, up to {@link #MAX_BURST} hedges
+     *
+     * @param units the budget units to add
+     */
+    static void addBudget(long units) {
+        if (units > 0)
+            BUDGET.getAndUpdate(budget -> Math.min(MAX_BURST * HEDGE_COST, budget + units));
+    }
+
+    /**
+     * Sends the hedge with an own trace, unless every call already failed. The reserved hedge is given back if it is not sent
+     */
+    private void sendHedge() {
+        if (pending.updateAndGet(count -> count == 0 ? 0 : count + 1) == 0) {
+            addBudget(HEDGE_COST);
+            return;
+        }
+
+        Call hedge = client.newCall(request.newBuilder().tag(CheckTrace.class, new CheckTrace()).build());
+        Deadlines.apply(hedge);
+        this.hedge = hedge;
+        hedge.enqueue(new Attempt());
+
+        if (answered.get())
+            hedge.cancel();
+    }
+
+    /**
+     * Cancels all calls that are still running
+     */
+    private void cancel() {
+        primary.cancel();
+
+        Call hedge = this.hedge;
+        if (hedge != null)
+            hedge.cancel();
+    }
+
+    /**
+     * Callback of one of the calls. The first response wins, failures are only passed on once no call is left
+     */
+    private final class Attempt implements Callback {
+        @Override
+        public void onResponse(@NotNull Call call, @NotNull Response response) throws IOException {
+            if (!answered.compareAndSet(false, true)) {
+                response.close();
+                return;
+            }
+
+            LATENCY.computeIfAbsent(request.url().host(), host -> new LatencyHistogram()).record(System.nanoTime() - start);
+
+            CheckTrace trace = CheckTrace.of(primary);
+            if (call != primary && trace != null)
+                trace.answeredBy(CheckTrace.of(call));
+
+            Call other = call == primary ? hedge : primary;
+            if (other != null)
+                other.cancel();
+
+            callback.onResponse(call, response);
+        }
+
+        @Override
+        public void onFailure(@NotNull Call call, @NotNull IOException ex) {
+            if (pending.decrementAndGet() == 0 && answered.compareAndSet(false, true))
+                callback.onFailure(call, ex);
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package de.sage.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free in memory metrics. The check latency is recorded in a histogram over all repositories and one per
+ * repository, the network phases of the checks in one histogram per {@link CheckTiming.Phase}. {@link Snapshot}s with
+ * percentiles can be taken at any time while checks keep running
+ *
+ * @author SageSphinx63920
+ */
+public final class InMemoryUpdateMetrics implements UpdateMetrics {
+
+    private static final int MAX_STATUS_CODE = 600;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final Map<String, LatencyHistogram> repositoryLatency = new ConcurrentHashMap<>();
+    private final Map<CheckTiming.Phase, LatencyHistogram> phases = new EnumMap<>(CheckTiming.Phase.class);
+    private final LongAdder bytesRead = new LongAdder();
+    private final AtomicLongArray statusCodes = new AtomicLongArray(MAX_STATUS_CODE);
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final AtomicInteger rateLimitRemaining = new AtomicInteger(-1);
+    private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+
+    /**
+     * Creates empty metrics
+     */
+    public InMemoryUpdateMetrics() {
+        for (CheckTiming.Phase phase : CheckTiming.Phase.values())
+            phases.put(phase, new LatencyHistogram());
+    }
+
+    @Override
+    public void checkCompleted(@NotNull String repository, long latencyNanos, @NotNull UpdateResult.Source source) {
+        record(repository, latencyNanos);
+    }
+
+    @Override
+    public void checkFailed(@NotNull String repository, long latencyNanos, @NotNull Throwable cause) {
+        record(repository, latencyNanos);
+        failures.computeIfAbsent(causeOf(cause), key -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void timingRecorded(@NotNull String repository, @NotNull CheckTiming timing) {
+        for (CheckTiming.Phase phase : CheckTiming.Phase.values())
+            phases.get(phase).record(timing.get(phase).toNanos());
+    }
+
+    @Override
+    public void responseReceived(@NotNull String repository, int statusCode, long bytesRead) {
+        this.bytesRead.add(bytesRead);
+
+        if (statusCode >= 0 && statusCode < MAX_STATUS_CODE)
+            statusCodes.incrementAndGet(statusCode);
+    }
+
+    @Override
+    public void notModified(@NotNull String repository) {
+        notModified.increment();
+    }
+
+    @Override
+    public void cacheHit(@NotNull String repository) {
+        cacheHits.increment();
+    }
+
+    @Override
+    public void requestHedged(@NotNull String repository) {
+        hedged.increment();
+    }
+
+    @Override
+    public void checkCoalesced(@NotNull String repository) {
+        coalesced.increment();
+    }
+
+    @Override
+    public void rateLimitUpdated(int remaining, int limit) {
+        rateLimitRemaining.set(remaining);
+    }
+
+    /**
+     * Returns the check latency over all repositories
+     *
+     * @return the snapshot of the latency
+     */
+    public @NotNull Snapshot getLatency() {
+        return latency.snapshot();
+    }
+
+    /**
+     * Returns the check latency of one repository
+     *
+     * @param repository the repository in the format author/name
+     * @return the snapshot of the latency or null if the repository was not checked yet
+     */
+    public @Nullable Snapshot getLatency(@NotNull String repository) {
+        LatencyHistogram histogram = repositoryLatency.get(repository);
+        return histogram == null ? null : histogram.snapshot();
+    }
+
+    /**
+     * Returns the time spent in a network phase over all checks that sent requests. Checks on pooled connections count
+     * with zero for dns, connect and tls, so the share of new connections shows in the percentiles
+     *
+     * @param phase the phase
+     * @return the snapshot of the phase
+     */
+    public @NotNull Snapshot getTiming(@NotNull CheckTiming.Phase phase) {
+        return phases.get(phase).snapshot();
+    }
+
+    /**
+     * Returns the time spent in all network phases, see {@link #getTiming(CheckTiming.Phase)}
+     *
+     * @return the snapshots by phase
+     */
+    public @NotNull Map<CheckTiming.Phase, Snapshot> getTimings() {
+        Map<CheckTiming.Phase, Snapshot> snapshots = new EnumMap<>(CheckTiming.Phase.class);
+        phases.forEach((phase, histogram) -> snapshots.put(phase, histogram.snapshot()));
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    /**
+     * Returns the bytes of the response bodies the checkers read. This is not the traffic on the wire: bodies closed
+     * unread, like the release page of public checks, and the part of the release json after the version are not counted
+     *
+     * @return the bytes read
+     */
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * Returns how often each http status code was received
+     *
+     * @return the counts by status code
+     */
+    public @NotNull Map<Integer, Long> getStatusCodes() {
+        Map<Integer, Long> counts = new TreeMap<>();
+
+        for (int code = 0; code < MAX_STATUS_CODE; code++) {
+            long count = statusCodes.get(code);
+            if (count > 0)
+                counts.put(code, count);
+        }
+
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * Returns how often github answered with <i>304 Not Modified</i>
+     *
+     * @return the number of not modified responses
+     */
+    public long getNotModified() {
+        return notModified.sum();
+    }
+
+    /**
+     * Returns how often a check was answered with the last result or the cached release instead of a new release
+     *
+     * @return the number of cache hits
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * Returns how often a slow request was sent a second time
+     *
+     * @return the number of hedged requests
+     */
+    public long getHedged() {
+        return hedged.sum();
+    }
+
+    /**
+     * Returns how often a check attached to the request of a running check instead of sending its own
+     *
+     * @return the number of coalesced checks
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Returns the remaining rate limit budget last reported by github
+     *
+     * @return the remaining requests or -1 if github did not report it yet
+     */
+    public int getRateLimitRemaining() {
+        return rateLimitRemaining.get();
+    }
+
+    /**
+     * Returns how often checks failed by cause. The cause is the http status code for error responses, else the simple
+     * name of the exception, for example <code>http 404</code>, <code>rate limit</code> or <code>SocketTimeoutException</code>
+     *
+     * @return the counts by cause
+     */
+    public @NotNull Map<String, Long> getFailures() {
+        Map<String, Long> counts = new TreeMap<>();
+        failures.forEach((cause, count) -> counts.put(cause, count.sum()));
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * Records the latency of a check
+     *
+     * @param repository   the repository
+     * @param latencyNanos the latency in nanoseconds
+     */
+    private void record(@NotNull String repository, long latencyNanos) {
+        latency.record(latencyNanos);
+
+        LatencyHistogram histogram = repositoryLatency.get(repository);
+        if (histogram == null)
+            histogram = repositoryLatency.computeIfAbsent(repository, key -> new LatencyHistogram());
+
+        histogram.record(latencyNanos);
+    }
+
+    /**
+     * Returns the cause a failure is counted as
+     *
+     * @param failure the failure
+     * @return the cause
+     */
+    private static @NotNull String causeOf(@NotNull Throwable failure) {
+        Throwable cause = failure;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null)
+            cause = cause.getCause();
+
+        if (cause instanceof UpdateCheckException exception)
+            return exception.getStatusCode() == 0 ? "rate limit" : "http " + exception.getStatusCode();
+        else if (cause instanceof TimeoutException)
+            return "timeout";
+        else if (cause instanceof CancellationException)
+            return "cancelled";
+        else if (cause instanceof IOException || cause instanceof RuntimeException)
+            return cause.getClass().getSimpleName();
+        else
+            return cause.getClass().getName();
+    }
+
+    /**
+     * Immutable copy of a latency histogram
+     */
+    public static final class Snapshot {
+        private final long[] buckets;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        /**
+         * Creates a snapshot
+         *
+         * @param buckets the counts per bucket
+         * @param count   the number of recorded latencies
+         * @param sum     the sum of the recorded latencies in microseconds
+         * @param max     the highest recorded latency in microseconds
+         */
+        Snapshot(long @NotNull [] buckets, long count, long sum, long max) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Returns the number of recorded latencies
+         *
+         * @return the number of checks
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the mean latency
+         *
+         * @return the mean latency, zero if nothing was recorded
+         */
+        public @NotNull Duration getMean() {
+            return count == 0 ? Duration.ZERO : Duration.ofNanos(sum * 1000 / count);
+        }
+
+        /**
+         * Returns the highest latency
+         *
+         * @return the highest latency, zero if nothing was recorded
+         */
+        public @NotNull Duration getMax() {
+            return Duration.ofNanos(max * 1000);
+        }
+
+        /**
+         * Returns a percentile of the latency, for example 0.99 for the p99
+         *
+         * @param quantile the quantile between 0 and 1
+         * @return the latency, zero if nothing was recorded
+         * @throws IllegalArgumentException throws if the quantile is not between 0 and 1
+         */
+        public @NotNull Duration getPercentile(double quantile) {
+            if (quantile < 0 || quantile > 1)
+                throw new IllegalArgumentException("The quantile has to be between 0 and 1!");
+
+            long total = 0;
+            for (long bucket : buckets)
+                total += bucket;
+
+            if (total == 0)
+                return Duration.ZERO;
+
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank)
+                    return Duration.ofNanos(Math.min(LatencyHistogram.upperBound(i), max) * 1000);
+            }
+
+            return getMax();
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{count=" + count + ", mean=" + getMean() + ", p50=" + getPercentile(0.5) + ", p90=" + getPercentile(0.9)
+                    + ", p99=" + getPercentile(0.99) + ", max=" + getMax() + "}";
+        }
+    }
+}
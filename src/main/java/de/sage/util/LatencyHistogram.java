@@ -0,0 +1,114 @@
+package de.sage.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with logarithmic buckets of microseconds. Values below 16 µs get an own bucket, above
+ * that every power of two is split into 8 buckets, so a percentile is at most 12.5% above the real value
+ */
+final class LatencyHistogram {
+
+    private static final int LINEAR = 16;
+    private static final int SUB_BUCKETS = 8;
+    private static final int BUCKETS = LINEAR + (63 - 4 + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a latency
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+
+        buckets.incrementAndGet(bucketOf(micros));
+        count.increment();
+        sum.add(micros);
+        max.accumulate(micros);
+    }
+
+    /**
+     * Returns the number of recorded latencies
+     *
+     * @return the number of latencies
+     */
+    long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns a percentile without copying the histogram
+     *
+     * @param quantile the quantile between 0 and 1
+     * @return the percentile in microseconds, 0 if nothing was recorded
+     */
+    long percentileMicros(double quantile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            total += buckets.get(i);
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS && total > 0; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank)
+                return Math.min(upperBound(i), max.get());
+        }
+
+        return max.get();
+    }
+
+    /**
+     * Copies the histogram. Latencies recorded during the copy may be missing in some of the values
+     *
+     * @return the snapshot
+     */
+    @NotNull InMemoryUpdateMetrics.Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            counts[i] = buckets.get(i);
+
+        return new InMemoryUpdateMetrics.Snapshot(counts, count.sum(), sum.sum(), max.get());
+    }
+
+    /**
+     * Returns the bucket of a value
+     *
+     * @param micros the value in microseconds
+     * @return the index of the bucket
+     */
+    private static int bucketOf(long micros) {
+        if (micros < LINEAR)
+            return (int) micros;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exponent - 4) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the highest value of a bucket
+     *
+     * @param bucket the index of the bucket
+     * @return the highest value in microseconds
+     */
+    static long upperBound(int bucket) {
+        if (bucket < LINEAR)
+            return bucket;
+
+        int exponent = (bucket - LINEAR) / SUB_BUCKETS + 4;
+        int subBucket = (bucket - LINEAR) % SUB_BUCKETS;
+        long width = 1L << (exponent - 3);
+
+        return (SUB_BUCKETS + subBucket) * width + width - 1;
+    }
+}
@@ -0,0 +1,165 @@
+package de.sage.util;
+
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the github api rate limit of one token. Every checker using the token shares the governor, which learns the
+ * remaining budget from the rate limit headers of the responses and refuses new requests once only the reserve is left,
+ * until github resets the limit
+ *
+ * @author SageSphinx63920
+ */
+public final class RateLimitGovernor {
+
+    private static final Map<String, RateLimitGovernor> GOVERNORS = new ConcurrentHashMap<>();
+
+    /**
+     * Requests kept back by default, so other users of the token are not starved
+     */
+    private static final int DEFAULT_RESERVE = 10;
+
+    private final AtomicInteger remaining = new AtomicInteger(-1);
+    private final AtomicLong deferred = new AtomicLong();
+
+    private volatile int limit = -1;
+    private volatile long resetAt;
+    private volatile int reserve = DEFAULT_RESERVE;
+
+    /**
+     * Creates a governor with an unknown budget
+     */
+    private RateLimitGovernor() {
+    }
+
+    /**
+     * Gets the governor of a token by its identity
+     *
+     * @param identity the identity of the token, see {@link #identity(String)}
+     * @return the governor shared by all checkers using the token
+     */
+    static @NotNull RateLimitGovernor forIdentity(@NotNull String identity) {
+        return GOVERNORS.computeIfAbsent(identity, key -> new RateLimitGovernor());
+    }
+
+    /**
+     * Returns an identity of a token that can be kept in memory without keeping the token
+     *
+     * @param token the github access token
+     * @return the hex encoded sha-256 hash of the token
+     */
+    static @NotNull String identity(@NotNull String token) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every java platform has to support SHA-256", e);
+        }
+    }
+
+    /**
+     * Takes one request from the budget
+     *
+     * @param now epoch milliseconds of now
+     * @return true if the request may be sent, false if it has to wait until {@link #getResetAt()}
+     */
+    boolean tryAcquire(long now) {
+        if (now >= resetAt)
+            return true;
+
+        while (true) {
+            int current = remaining.get();
+
+            if (current < 0)
+                return true;
+
+            if (current <= reserve) {
+                deferred.incrementAndGet();
+                return false;
+            }
+
+            if (remaining.compareAndSet(current, current - 1))
+                return true;
+        }
+    }
+
+    /**
+     * Updates the budget from the rate limit headers of a github api response. Responses of other rate limit resources than the core one are ignored
+     *
+     * @param response the response of the github api
+     */
+    void update(@NotNull Response response) {
+        String resource = response.header("X-RateLimit-Resource");
+        if (resource != null && !resource.equals("core"))
+            return;
+
+        try {
+            String remainingHeader = response.header("X-RateLimit-Remaining");
+            String limitHeader = response.header("X-RateLimit-Limit");
+            String resetHeader = response.header("X-RateLimit-Reset");
+
+            if (limitHeader != null)
+                limit = Integer.parseInt(limitHeader.trim());
+            if (resetHeader != null)
+                resetAt = Long.parseLong(resetHeader.trim()) * 1000;
+            if (remainingHeader != null)
+                remaining.set(Integer.parseInt(remainingHeader.trim()));
+        } catch (NumberFormatException ignored) {
+            // keeps the last known budget
+        }
+    }
+
+    /**
+     * Sets how many requests are kept back from the budget
+     *
+     * @param reserve number of requests never used by checkers
+     */
+    public void setReserve(int reserve) {
+        this.reserve = reserve;
+    }
+
+    /**
+     * Returns the remaining budget as last reported by github, minus the requests sent since
+     *
+     * @return the remaining requests or -1 if there was no response yet
+     */
+    public int getRemaining() {
+        return remaining.get();
+    }
+
+    /**
+     * Returns the total budget per rate limit window
+     *
+     * @return the limit or -1 if there was no response yet
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns when github resets the budget
+     *
+     * @return the reset time, the epoch if there was no response yet
+     */
+    public @NotNull Instant getResetAt() {
+        return Instant.ofEpochMilli(resetAt);
+    }
+
+    /**
+     * Returns how many checks were deferred because the budget was used up
+     *
+     * @return the number of deferred checks
+     */
+    public long getDeferred() {
+        return deferred.get();
+    }
+}
@@ -0,0 +1,225 @@
+package de.sage.util;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of the latest releases keyed by the repository uri. It stores the validators of the last response, so repeated
+ * checks can be sent as conditional requests and reuse the cached version on a <i>304 Not Modified</i>.
+ * <p>
+ * If a directory is set every release is also written to a small json file, so a new jvm can answer from the cache
+ * before its first request is done. A release that was only fetched again is not written again until the persisted
+ * one is older than the time to live, so conditional requests answered with <i>304 Not Modified</i> do not write a
+ * file on the http dispatcher thread every time
+ */
+final class ReleaseCache {
+
+    private final Map<URI, Entry> entries = new ConcurrentHashMap<>();
+    /**
+     * Releases as they are in the cache directory
+     */
+    private final Map<URI, Entry> persisted = new ConcurrentHashMap<>();
+
+    private volatile @Nullable Path directory;
+    private volatile @NotNull Duration timeToLive = Duration.ZERO;
+
+    /**
+     * Sets the directory the releases are persisted to
+     *
+     * @param directory  the directory or null to only cache in memory
+     * @param timeToLive how long a persisted release is used without a new request
+     * @throws IOException throws if the directory could not be created
+     */
+    void setDirectory(@Nullable Path directory, @NotNull Duration timeToLive) throws IOException {
+        if (directory != null)
+            Files.createDirectories(directory);
+
+        this.directory = directory;
+        this.timeToLive = timeToLive;
+        this.persisted.clear();
+    }
+
+    /**
+     * Gets the cached release of a repository. Releases missing in memory are read from the cache directory
+     *
+     * @param uri the repository uri
+     * @return the cached release or null if there is none
+     */
+    @Nullable Entry get(@NotNull URI uri) {
+        Entry entry = entries.get(uri);
+
+        if (entry == null) {
+            entry = load(uri);
+            if (entry != null)
+                entries.putIfAbsent(uri, entry);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Gets the cached release of a repository if it was fetched inside the time to live
+     *
+     * @param uri the repository uri
+     * @param now epoch milliseconds of now
+     * @return the cached release or null if there is none or it is too old
+     */
+    @Nullable Entry getFresh(@NotNull URI uri, long now) {
+        Entry entry = get(uri);
+
+        if (entry == null || now - entry.fetchedAt() > timeToLive.toMillis())
+            return null;
+
+        return entry;
+    }
+
+    /**
+     * Caches the release of a repository. It is only persisted if it changed or the persisted one is older than the time to live
+     *
+     * @param uri   the repository uri
+     * @param entry the release to cache
+     */
+    void put(@NotNull URI uri, @NotNull Entry entry) {
+        entries.put(uri, entry);
+
+        Entry stored = persisted.get(uri);
+        if (stored != null && stored.sameRelease(entry) && entry.fetchedAt() - stored.fetchedAt() < timeToLive.toMillis())
+            return;
+
+        store(uri, entry);
+    }
+
+    /**
+     * Reads the persisted release of a repository
+     *
+     * @param uri the repository uri
+     * @return the persisted release or null if there is none or it could not be read
+     */
+    private @Nullable Entry load(@NotNull URI uri) {
+        Path directory = this.directory;
+        if (directory == null)
+            return null;
+
+        Path file = directory.resolve(fileName(uri));
+        if (!Files.isRegularFile(file))
+            return null;
+
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            JsonObject json = JsonParser.parseReader(reader).getAsJsonObject();
+
+            Entry entry = new Entry(Version.of(json.get("version").getAsString(), json.get("prerelease").getAsBoolean()),
+                    optionalString(json.get("etag")), optionalString(json.get("lastModified")), json.get("fetchedAt").getAsLong());
+
+            persisted.putIfAbsent(uri, entry);
+            return entry;
+        } catch (IOException | JsonParseException | IllegalStateException | IllegalArgumentException | NullPointerException e) {
+            // a broken cache file is only a missed cache hit, the next response overwrites it
+            return null;
+        }
+    }
+
+    /**
+     * Persists the release of a repository. The file is replaced atomically, so concurrent jvms never read half a file.
+     * A temporary file left by a failed write is deleted
+     *
+     * @param uri   the repository uri
+     * @param entry the release to persist
+     */
+    private void store(@NotNull URI uri, @NotNull Entry entry) {
+        Path directory = this.directory;
+        if (directory == null)
+            return;
+
+        JsonObject json = new JsonObject();
+        json.addProperty("uri", uri.toString());
+        json.addProperty("version", entry.latest().get());
+        json.addProperty("prerelease", entry.latest().getVersionType() == Version.Type.DEV);
+        json.addProperty("etag", entry.etag());
+        json.addProperty("lastModified", entry.lastModified());
+        json.addProperty("fetchedAt", entry.fetchedAt());
+
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(directory, "release", ".tmp");
+            Files.writeString(temp, json.toString(), StandardCharsets.UTF_8);
+            Files.move(temp, directory.resolve(fileName(uri)), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            persisted.put(uri, entry);
+        } catch (IOException e) {
+            // the memory cache still works, the release is persisted again with the next response
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // nothing left to do, the next write uses a new temporary file
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the file name used for the release of a repository
+     *
+     * @param uri the repository uri
+     * @return the file name
+     */
+    private static @NotNull String fileName(@NotNull URI uri) {
+        return (uri.getHost() + uri.getPath()).replaceAll("[^A-Za-z0-9._-]", "_") + ".json";
+    }
+
+    /**
+     * Returns the string of a json value that may be missing or null
+     *
+     * @param element the json value
+     * @return the string or null
+     */
+    private static @Nullable String optionalString(@Nullable JsonElement element) {
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    /**
+     * Cached release
+     *
+     * @param latest       the latest version
+     * @param etag         the etag of the response, can be null
+     * @param lastModified the last modified date of the response, can be null
+     * @param fetchedAt    epoch milliseconds of the response
+     */
+    record Entry(@NotNull Version latest, @Nullable String etag, @Nullable String lastModified, long fetchedAt) {
+        /**
+         * Returns the same release fetched again at the given time
+         *
+         * @param fetchedAt epoch milliseconds of the response
+         * @return the refreshed entry
+         */
+        @NotNull Entry refreshed(long fetchedAt) {
+            return new Entry(latest, etag, lastModified, fetchedAt);
+        }
+
+        /**
+         * Checks if another entry holds the same release and validators, ignoring when they were fetched
+         *
+         * @param other the other entry
+         * @return true if only the fetch time can differ
+         */
+        boolean sameRelease(@NotNull Entry other) {
+            return latest.get().equals(other.latest.get()) && latest.getVersionType() == other.latest.getVersionType()
+                    && Objects.equals(etag, other.etag) && Objects.equals(lastModified, other.lastModified);
+        }
+    }
+}
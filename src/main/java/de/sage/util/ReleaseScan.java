@@ -0,0 +1,236 @@
+package de.sage.util;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import okhttp3.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Scan of the release list of a repository through the github api. The pages are streamed and folded into the newest
+ * version per {@link Version.Type}, without keeping the list in memory.
+ * <p>
+ * Github lists the releases newest first, so the scan stops once every tracked channel has a version and a whole page
+ * did not bring a newer one, or after {@link #MAX_PAGES} pages. The pages are fetched one after another, so the folded
+ * state is only touched by one callback at a time
+ */
+final class ReleaseScan {
+
+    /**
+     * Releases per page
+     */
+    static final int PER_PAGE = 30;
+    /**
+     * Maximum number of pages scanned
+     */
+    static final int MAX_PAGES = 10;
+
+    private final @NotNull OkHttpClient client;
+    private final @NotNull Request releases;
+    private final @NotNull Version.Type channel;
+    private final @Nullable RateLimitGovernor governor;
+    private final @NotNull String repository;
+    private final @NotNull UpdateMetrics metrics;
+
+    private final Map<Version.Type, Version> newest = new EnumMap<>(Version.Type.class);
+    private final CompletableFuture<Version> result = new CompletableFuture<>();
+    private volatile @Nullable Call call;
+
+    /**
+     * Creates a scan
+     *
+     * @param client     the http client
+     * @param releases   request of the release list. Its headers and tags, like the {@link CheckTrace} filled by all pages, are used for every page
+     * @param channel    the tracked channel, releases are always tracked too
+     * @param governor   the rate limit governor of the token, can be null
+     * @param repository the repository in the format author/name, used for the metrics
+     * @param metrics    the metrics every page is reported to
+     */
+    ReleaseScan(@NotNull OkHttpClient client, @NotNull Request releases, @NotNull Version.Type channel, @Nullable RateLimitGovernor governor,
+                @NotNull String repository, @NotNull UpdateMetrics metrics) {
+        this.client = client;
+        this.releases = releases;
+        this.channel = channel;
+        this.governor = governor;
+        this.repository = repository;
+        this.metrics = metrics;
+
+        result.whenComplete((done, ex) -> {
+            Call call = this.call;
+            if (call != null && (ex instanceof CancellationException || ex instanceof TimeoutException))
+                call.cancel();
+        });
+    }
+
+    /**
+     * Starts the scan. The first page has to be taken from the rate limit budget by the caller
+     *
+     * @return future completed with the newest version of the tracked channel or release
+     */
+    @NotNull CompletableFuture<Version> start() {
+        fetch(1);
+        return result;
+    }
+
+    /**
+     * Fetches a page of the release list
+     *
+     * @param page the page number, starting at 1
+     */
+    private void fetch(int page) {
+        if (result.isDone())
+            return;
+
+        HttpUrl url = releases.url().newBuilder()
+                .addQueryParameter("per_page", String.valueOf(PER_PAGE))
+                .addQueryParameter("page", String.valueOf(page)).build();
+
+        Call call = client.newCall(releases.newBuilder().url(url).build());
+        Deadlines.apply(call);
+        this.call = call;
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                try {
+                    Map<Version.Type, Version> before = new EnumMap<>(newest);
+                    CheckTrace trace = Objects.requireNonNull(CheckTrace.of(call));
+                    long bytesBefore = trace.getBytesRead();
+                    int releases;
+
+                    try (response) {
+                        releases = read(response);
+                    } finally {
+                        metrics.responseReceived(repository, response.code(), trace.getBytesRead() - bytesBefore);
+                    }
+
+                    boolean improved = !before.equals(newest);
+
+                    boolean complete = newest.containsKey(Version.Type.RELEASE) && newest.containsKey(channel);
+
+                    if (releases < PER_PAGE || page >= MAX_PAGES || (complete && !improved)
+                            || (governor != null && !governor.tryAcquire(System.currentTimeMillis())))
+                        finish();
+                    else
+                        fetch(page + 1);
+                } catch (IOException | RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException ex) {
+                result.completeExceptionally(ex);
+            }
+        });
+    }
+
+    /**
+     * Reads a page of the release list
+     *
+     * @param response the response of the github api
+     * @return the number of releases on the page
+     * @throws IOException throws if the repository is not reachable or the json could not be read
+     */
+    private int read(@NotNull Response response) throws IOException {
+        if (governor != null) {
+            governor.update(response);
+            if (governor.getRemaining() >= 0)
+                metrics.rateLimitUpdated(governor.getRemaining(), governor.getLimit());
+        }
+
+        if (response.code() != 200 || response.body() == null)
+            throw new UpdateCheckException("Could not get the releases of this repo. This could be due to the repository not existing or a wrong token with no read permission on the releases.", response);
+
+        return readPage(response.body());
+    }
+
+    /**
+     * Streams a page and folds its releases into the newest version per type. Drafts and tags that are no valid version are skipped
+     *
+     * @param body body of the page
+     * @return the number of releases on the page
+     * @throws IOException throws if the json could not be read
+     */
+    private int readPage(@NotNull ResponseBody body) throws IOException {
+        int releases = 0;
+
+        try (JsonReader reader = new JsonReader(body.charStream())) {
+            reader.beginArray();
+
+            while (reader.hasNext()) {
+                String tag = null;
+                boolean preRelease = false;
+                boolean draft = false;
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.skipValue();
+                        continue;
+                    }
+
+                    switch (name) {
+                        case "tag_name" -> tag = reader.nextString();
+                        case "prerelease" -> preRelease = reader.nextBoolean();
+                        case "draft" -> draft = reader.nextBoolean();
+                        default -> reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                releases++;
+
+                if (tag != null && !draft)
+                    fold(tag, preRelease);
+            }
+
+            reader.endArray();
+        }
+
+        return releases;
+    }
+
+    /**
+     * Keeps the version of a release if it is the newest of its type. The versions are not interned, most of them are
+     * old releases thrown away after the scan that would only push the versions in use out of the interned ones
+     *
+     * @param tag        the tag name of the release
+     * @param preRelease if the release is marked as prerelease
+     */
+    private void fold(@NotNull String tag, boolean preRelease) {
+        Version version;
+        try {
+            version = new Version(UpdateChecker.tagVersion(tag), preRelease);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+
+        newest.merge(version.getVersionType(), version, (current, next) -> next.compareTo(current) > 0 ? next : current);
+    }
+
+    /**
+     * Completes the scan with the canonical version of the newest version of the tracked channel or release
+     *
+     * @throws IOException throws if no version was found
+     */
+    private void finish() throws IOException {
+        Version release = newest.get(Version.Type.RELEASE);
+        Version tracked = newest.get(channel);
+        Version latest = release == null || (tracked != null && tracked.compareTo(release) > 0) ? tracked : release;
+
+        if (latest == null)
+            throw new IOException("No version found!");
+
+        result.complete(Version.of(latest.get(), latest.getVersionType() == Version.Type.DEV));
+    }
+}
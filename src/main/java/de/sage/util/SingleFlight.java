@@ -0,0 +1,131 @@
+package de.sage.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent requests for the same key. While a request is in flight, callers with the same key attach to
+ * it instead of starting their own and all of them receive its result. A request is only cancelled once every
+ * attached caller gave up on it
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the results
+ */
+final class SingleFlight<K, V> {
+
+    private final Map<K, Flight<V>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * Attaches to the request in flight for a key or starts a new one
+     *
+     * @param key   the key of the request
+     * @param start starts the request, only called if there is no request in flight for the key
+     * @return future completed with the result of the request. Completing it exceptionally, for example by cancelling
+     * it, detaches the caller and cancels the request if no other caller is attached
+     */
+    @NotNull CompletableFuture<V> join(@NotNull K key, @NotNull Supplier<CompletableFuture<V>> start) {
+        while (true) {
+            Flight<V> flight = flights.get(key);
+
+            if (flight == null) {
+                Flight<V> created = new Flight<>();
+                flight = flights.putIfAbsent(key, created);
+
+                if (flight == null) {
+                    created.result.whenComplete((done, ex) -> flights.remove(key, created));
+                    created.start(start);
+                    return created.follow();
+                }
+            }
+
+            if (flight.attach())
+                return flight.follow();
+
+            // the flight is done or was abandoned by all its callers, it is removed right away
+            flights.remove(key, flight);
+        }
+    }
+
+    /**
+     * Request in flight and the number of callers attached to it
+     *
+     * @param <V> the type of the result
+     */
+    private static final class Flight<V> {
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        /**
+         * Attached callers, -1 once every caller detached and the request is cancelled
+         */
+        private final AtomicInteger callers = new AtomicInteger(1);
+
+        /**
+         * Starts the request
+         *
+         * @param start starts the request
+         */
+        private void start(@NotNull Supplier<CompletableFuture<V>> start) {
+            CompletableFuture<V> request;
+            try {
+                request = start.get();
+            } catch (RuntimeException e) {
+                request = CompletableFuture.failedFuture(e);
+            }
+
+            CompletableFuture<V> started = request;
+            result.whenComplete((done, ex) -> {
+                if (ex != null)
+                    started.cancel(true);
+            });
+            started.whenComplete((done, ex) -> {
+                if (ex == null)
+                    result.complete(done);
+                else
+                    result.completeExceptionally(ex);
+            });
+        }
+
+        /**
+         * Attaches a caller
+         *
+         * @return true if the caller is attached, false if the request is already done or cancelled
+         */
+        private boolean attach() {
+            return !result.isDone() && callers.getAndUpdate(count -> count < 0 ? count : count + 1) >= 0;
+        }
+
+        /**
+         * Creates the future of an attached caller
+         *
+         * @return the future of the caller
+         */
+        private @NotNull CompletableFuture<V> follow() {
+            CompletableFuture<V> follower = new CompletableFuture<>();
+
+            result.whenComplete((done, ex) -> {
+                if (ex == null)
+                    follower.complete(done);
+                else
+                    follower.completeExceptionally(ex);
+            });
+            follower.whenComplete((done, ex) -> {
+                if (ex != null && !result.isDone())
+                    detach();
+            });
+
+            return follower;
+        }
+
+        /**
+         * Detaches a caller and cancels the request once no caller is left
+         */
+        private void detach() {
+            if (callers.updateAndGet(count -> count == 1 ? -1 : count - 1) == -1)
+                result.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package de.sage.util;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event of an update check that finished with a result. The event spans the whole check
+ */
+@Name("de.sage.util.UpdateCheckCompleted")
+@Label("Update Check Completed")
+@Category("Update Checker")
+@Description("An update check finished with a result")
+@StackTrace(false)
+final class UpdateCheckCompleted extends Event {
+
+    @Label("Repository")
+    @Description("The repository in the format author/name")
+    String repository;
+
+    @Label("Mode")
+    @Description("How the latest release is read: public, redirect, api or scan")
+    String mode;
+
+    @Label("DNS")
+    @Timespan(Timespan.NANOSECONDS)
+    long dns;
+
+    @Label("Connect")
+    @Description("Time spent opening connections, including the TLS handshakes")
+    @Timespan(Timespan.NANOSECONDS)
+    long connect;
+
+    @Label("TLS")
+    @Timespan(Timespan.NANOSECONDS)
+    long tls;
+
+    @Label("Time To First Byte")
+    @Timespan(Timespan.NANOSECONDS)
+    long timeToFirstByte;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+
+    @Label("Status Code")
+    int statusCode;
+
+    @Label("Cache Outcome")
+    String cacheOutcome;
+
+    @Label("Latest Version")
+    String latestVersion;
+
+    @Label("Update Available")
+    boolean updateAvailable;
+}
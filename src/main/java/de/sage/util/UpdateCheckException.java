@@ -0,0 +1,106 @@
+package de.sage.util;
+
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Thrown if github answered a check with an error status or the check was not sent because the rate limit is used up
+ *
+ * @author SageSphinx63920
+ */
+public class UpdateCheckException extends IOException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+    private final @Nullable Duration retryAfter;
+
+    /**
+     * Creates the exception from the error response
+     *
+     * @param message  the detail message
+     * @param response the error response of github
+     */
+    UpdateCheckException(@NotNull String message, @NotNull Response response) {
+        super(message + " Status code: " + response.code());
+        this.statusCode = response.code();
+        this.retryAfter = retryAfter(response, System.currentTimeMillis());
+    }
+
+    /**
+     * Creates the exception for a check that was not answered by github
+     *
+     * @param message    the detail message
+     * @param statusCode the http status code, 0 if no request was sent
+     * @param retryAfter how long to wait before the next request, can be null
+     */
+    UpdateCheckException(@NotNull String message, int statusCode, @Nullable Duration retryAfter) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Returns the http status code of the response
+     *
+     * @return the status code, 0 if no request was sent
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Returns how long github asked to wait before the next request
+     *
+     * @return the time to wait or null if github did not ask to wait
+     */
+    public @Nullable Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Reads how long to wait before the next request from the <i>Retry-After</i> header or, if the rate limit is used
+     * up, from the <i>X-RateLimit-Reset</i> header
+     *
+     * @param response the response of github
+     * @param now      epoch milliseconds of now
+     * @return the time to wait or null if github did not ask to wait
+     */
+    static @Nullable Duration retryAfter(@NotNull Response response, long now) {
+        String retryAfter = response.header("Retry-After");
+
+        if (retryAfter != null) {
+            try {
+                return Duration.ofSeconds(Long.parseLong(retryAfter.trim()));
+            } catch (NumberFormatException e) {
+                try {
+                    long until = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                    return Duration.ofMillis(Math.max(0, until - now));
+                } catch (DateTimeParseException ignored) {
+                    // falls back to the rate limit headers
+                }
+            }
+        }
+
+        String reset = response.header("X-RateLimit-Reset");
+
+        if ("0".equals(response.header("X-RateLimit-Remaining")) && reset != null) {
+            try {
+                return Duration.ofMillis(Math.max(0, Long.parseLong(reset.trim()) * 1000 - now));
+            } catch (NumberFormatException ignored) {
+                // github sends no usable reset time
+            }
+        }
+
+        return null;
+    }
+}
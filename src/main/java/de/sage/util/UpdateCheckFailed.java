@@ -0,0 +1,53 @@
+package de.sage.util;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event of a failed update check. The event spans the whole check
+ */
+@Name("de.sage.util.UpdateCheckFailed")
+@Label("Update Check Failed")
+@Category("Update Checker")
+@Description("An update check failed")
+@StackTrace(false)
+final class UpdateCheckFailed extends Event {
+
+    @Label("Repository")
+    @Description("The repository in the format author/name")
+    String repository;
+
+    @Label("Mode")
+    @Description("How the latest release is read: public, redirect, api or scan")
+    String mode;
+
+    @Label("DNS")
+    @Timespan(Timespan.NANOSECONDS)
+    long dns;
+
+    @Label("Connect")
+    @Description("Time spent opening connections, including the TLS handshakes")
+    @Timespan(Timespan.NANOSECONDS)
+    long connect;
+
+    @Label("TLS")
+    @Timespan(Timespan.NANOSECONDS)
+    long tls;
+
+    @Label("Time To First Byte")
+    @Timespan(Timespan.NANOSECONDS)
+    long timeToFirstByte;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+
+    @Label("Status Code")
+    @Description("Status code of the last response, 0 if there was none")
+    int statusCode;
+
+    @Label("Cache Outcome")
+    String cacheOutcome;
+
+    @Label("Failure")
+    String failure;
+}
@@ -0,0 +1,22 @@
+package de.sage.util;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event of a started update check
+ */
+@Name("de.sage.util.UpdateCheckStarted")
+@Label("Update Check Started")
+@Category("Update Checker")
+@Description("An update check was started")
+@StackTrace(false)
+final class UpdateCheckStarted extends Event {
+
+    @Label("Repository")
+    @Description("The repository in the format author/name")
+    String repository;
+
+    @Label("Mode")
+    @Description("How the latest release is read: public, redirect, api or scan")
+    String mode;
+}
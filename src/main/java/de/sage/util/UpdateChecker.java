@@ -1,14 +1,23 @@
 package de.sage.util;
 
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
 import okhttp3.*;
-import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.net.*;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -18,18 +27,53 @@ import java.util.logging.Logger;
  */
 public class UpdateChecker {
 
+    private static final Logger LOGGER = Logger.getLogger(UpdateChecker.class.getName());
+
+    /**
+     * Release cache shared by all checkers, so every repository is only downloaded again once it changed
+     */
+    private static final ReleaseCache RELEASE_CACHE = new ReleaseCache();
+
+    /**
+     * Default time budget of each source of the fallback chain
+     */
+    private static final Duration DEFAULT_SOURCE_BUDGET = Duration.ofSeconds(5);
+
+    /**
+     * Requests in flight, shared by all checkers of the same repository, token, mode, deadlines, hedging and fallback
+     */
+    private static final SingleFlight<FlightKey, Release> FLIGHTS = new SingleFlight<>();
+
+    private static volatile @Nullable Deadlines defaultDeadlines;
+
+    private final @NotNull String author;
     private final @NotNull String repoName;
     private final @NotNull Version version;
     private final @NotNull URI uri;
+    private final @NotNull URI publicUri;
     private final @Nullable Logger logger;
     private final boolean autoNotify;
     private final @NotNull OkHttpClient client;
 
     private @Nullable String token;
+    private @Nullable String tokenIdentity;
+    private @Nullable RateLimitGovernor governor;
 
-    private @Nullable Version latestVersion;
-    private boolean updateAvailable = false;
+    /**
+     * Latest result of this checker. It is only replaced as a whole, so readers always see a consistent state
+     */
+    private final AtomicReference<UpdateResult> lastResult = new AtomicReference<>();
     private String updateMessage;
+    private volatile boolean redirectOnly = false;
+    private volatile @Nullable VersionConstraint updateConstraint;
+    private volatile @Nullable Version.Type releaseChannel;
+    private volatile @Nullable OkHttpClient redirectClient;
+    private volatile @NotNull UpdateMetrics metrics = UpdateMetrics.NONE;
+    private volatile @Nullable Deadlines deadlines;
+    private volatile boolean hedging = false;
+    private volatile boolean fallback = false;
+    private volatile @Nullable Duration apiBudget = DEFAULT_SOURCE_BUDGET;
+    private volatile @Nullable Duration publicBudget = DEFAULT_SOURCE_BUDGET;
 
     /**
      * Creates the update checker object used for checking if there is a release with a newer version on <strong>ONLY public github repositories</strong>. Use the github api checker for private repositories
@@ -41,22 +85,40 @@ public class UpdateChecker {
      * @param logger     logger to send the update message
      */
     public UpdateChecker(@NotNull String author, @NotNull String name, @NotNull String version, boolean autoNotify, @Nullable Logger logger) {
+        this(author, name, version, autoNotify, logger, getSharedClient());
+    }
+
+    /**
+     * Creates the update checker object used for checking if there is a release with a newer version on <strong>ONLY public github repositories</strong> using an own http client
+     *
+     * @param author     author of the repo
+     * @param name       name of the repo
+     * @param version    currently used version
+     * @param autoNotify <i>recommended</i> automatically sends a message if there is an update available with the logger. <i>manually doing this could create problems with the async http call</i>
+     * @param logger     logger to send the update message
+     * @param client     http client used for the requests. Derive it from {@link #getSharedClient()} to keep sharing its connections
+     */
+    public UpdateChecker(@NotNull String author, @NotNull String name, @NotNull String version, boolean autoNotify, @Nullable Logger logger, @NotNull OkHttpClient client) {
+        this.author = author;
         this.repoName = name;
         this.autoNotify = autoNotify;
-        this.version = new Version(removePrefix(version));
+        this.version = Version.of(version);
         this.logger = logger;
 
         if (autoNotify && logger == null) {
             throw new NullPointerException("No logger provided with autoNotify set to true. Please provide logger!");
         }
 
-        client = new OkHttpClient().newBuilder().build();
+        this.client = instrument(client);
 
         try {
             this.uri = new URI("https://github.com/" + author + "/" + repoName + "/releases/latest");
         } catch (URISyntaxException e) {
             throw new RuntimeException(e);
         }
+        this.publicUri = uri;
+
+        seedFromCache();
     }
 
     /**
@@ -70,9 +132,27 @@ public class UpdateChecker {
      * @param token      github access token with access to the repository's releases
      */
     public UpdateChecker(@NotNull String author, @NotNull String name, @NotNull String version, boolean autoNotify, @Nullable Logger logger, @NotNull String token) {
+        this(author, name, version, autoNotify, logger, token, getSharedClient());
+    }
+
+    /**
+     * Creates the update checker object used for checking if there is a release with a newer version on <strong>public or private github repositories using the github api </strong> using an own http client
+     *
+     * @param author     author of the repo
+     * @param name       name of the repo
+     * @param version    currently used version
+     * @param autoNotify <i>recommended</i> automatically sends a message if there is an update available with the logger. <i>manually doing this could create problems with the async http call</i>
+     * @param logger     logger to send the update message
+     * @param token      github access token with access to the repository's releases
+     * @param client     http client used for the requests. Derive it from {@link #getSharedClient()} to keep sharing its connections
+     */
+    public UpdateChecker(@NotNull String author, @NotNull String name, @NotNull String version, boolean autoNotify, @Nullable Logger logger, @NotNull String token, @NotNull OkHttpClient client) {
+        this.author = author;
         this.repoName = name;
-        this.version = new Version(removePrefix(version));
+        this.version = Version.of(version);
         this.token = token;
+        this.tokenIdentity = RateLimitGovernor.identity(token);
+        this.governor = RateLimitGovernor.forIdentity(tokenIdentity);
         this.logger = logger;
         this.autoNotify = autoNotify;
 
@@ -80,46 +160,488 @@ public class UpdateChecker {
             throw new NullPointerException("No logger provided with autoNotify set to true. Please provide logger!");
         }
 
-        client = new OkHttpClient().newBuilder().build();
+        this.client = instrument(client);
 
         try {
             this.uri = new URI("https://api.github.com/repos/" + author + "/" + repoName + "/releases/latest");
+            this.publicUri = new URI("https://github.com/" + author + "/" + repoName + "/releases/latest");
         } catch (URISyntaxException e) {
             throw new RuntimeException(e);
         }
+
+        seedFromCache();
+    }
+
+    /**
+     * Persists the latest releases of all checkers to a directory. New checkers, also in later runs of the jvm, take the
+     * update status of a persisted release fetched inside the time to live right away, while #check refreshes it in the background.
+     * Call this before creating the checkers
+     *
+     * @param directory  the directory the releases are persisted to, null to disable persisting
+     * @param timeToLive how long a persisted release is used as the status of a new checker
+     * @throws IOException throws if the directory could not be created
+     */
+    public static void setCacheDirectory(@Nullable Path directory, @NotNull Duration timeToLive) throws IOException {
+        RELEASE_CACHE.setDirectory(directory, timeToLive);
+    }
+
+    /**
+     * Sets the timeouts of all checkers that do not set an own one with {@link #setDeadlines(Duration, Duration, Duration)}.
+     * Without them the timeouts of the http client are used, which are 10 seconds per phase and no call deadline for the shared client
+     *
+     * @param connect timeout of opening a connection, null to keep the one of the client
+     * @param read    timeout between two reads of a response, null to keep the one of the client
+     * @param call    deadline of a whole request including redirects, null to keep the one of the client
+     * @throws IllegalArgumentException throws if a timeout is shorter than one millisecond or longer than {@link Integer#MAX_VALUE} milliseconds
+     */
+    public static void setDefaultDeadlines(@Nullable Duration connect, @Nullable Duration read, @Nullable Duration call) {
+        defaultDeadlines = connect == null && read == null && call == null ? null : new Deadlines(connect, read, call);
+    }
+
+    /**
+     * Sets the highest share of the recently sent requests that may be hedged, see {@link #setHedging(boolean)}. The
+     * default is 5%. Every sent request earns its share of a hedge, at most 10 unused hedges are kept for a burst
+     *
+     * @param ratio the share between 0 and 1, 0 to never hedge
+     * @throws IllegalArgumentException throws if the share is not between 0 and 1
+     */
+    public static void setMaxHedgeRatio(double ratio) {
+        HedgedCall.setMaxRatio(ratio);
+    }
+
+    /**
+     * Returns a client that traces the requests of the checks and applies their deadlines. A client that already does
+     * is returned as it is, else a client sharing its connections and dispatcher is derived, which still reports to the
+     * event listener of the client
+     *
+     * @param client the client
+     * @return the instrumented client
+     */
+    private static @NotNull OkHttpClient instrument(@NotNull OkHttpClient client) {
+        if (client.eventListenerFactory() instanceof CheckTrace.Factory)
+            return client;
+
+        return client.newBuilder().addInterceptor(Deadlines.INTERCEPTOR)
+                .eventListenerFactory(new CheckTrace.Factory(client.eventListenerFactory())).build();
+    }
+
+    /**
+     * Takes the update status from the cached release if it is fresh enough
+     */
+    private void seedFromCache() {
+        ReleaseCache.Entry cached = RELEASE_CACHE.getFresh(uri, System.currentTimeMillis());
+
+        if (cached != null)
+            publish(new UpdateResult(getRepository(), version.get(), cached.latest().get(), version.compareTo(cached.latest()) < 0,
+                    Instant.ofEpochMilli(cached.fetchedAt()), UpdateResult.Source.CACHE, null));
+    }
+
+    /**
+     * Returns the http client shared by all checkers created without an own client. All of them reuse its connection pool,
+     * dispatcher and tls sessions to github.com and api.github.com
+     *
+     * @return the shared http client
+     */
+    public static @NotNull OkHttpClient getSharedClient() {
+        return SharedClient.INSTANCE;
     }
 
     /**
      * Checks is there is an update. This runs async http requests, so it could take some time to update the status.
-     * Use #notifyStatus or #getUpdateStatus to do any more actions
+     * Use #notifyStatus or #getUpdateStatus to do any more actions. Failed checks are logged with the provided logger
      *
      * @throws IOException throws if there is a problem with okhttp
+     * @see #checkAsync()
      */
     public void check() throws IOException {
+        enqueue(newRequest()).whenComplete((result, ex) -> {
+            if (ex != null)
+                (logger != null ? logger : LOGGER).log(Level.WARNING, "Could not check " + repoName + " for updates", ex);
+        });
+    }
+
+    /**
+     * Checks is there is an update without blocking. Cancelling the future or letting it time out, for example with
+     * {@link CompletableFuture#orTimeout(long, TimeUnit)}, cancels the http call once no other check waits for it.
+     * While a check of the same repository with the same token and mode is running, its request is joined instead of
+     * sending a new one
+     *
+     * @return future completed with the result of the check, or exceptionally if the check failed
+     */
+    public @NotNull CompletableFuture<UpdateResult> checkAsync() {
+        try {
+            return enqueue(newRequest());
+        } catch (MalformedURLException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Checks is there is an update without blocking, failing if there is no result in time
+     *
+     * @param timeout maximum time until the check has to be done
+     * @return future completed with the result of the check, or exceptionally with a {@link TimeoutException} if the check took too long
+     */
+    public @NotNull CompletableFuture<UpdateResult> checkAsync(@NotNull Duration timeout) {
+        return checkAsync().orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Enqueues the request for the latest release and reports the outcome to the metrics and the flight recorder
+     *
+     * @param request the request built by {@link #newRequest()}
+     * @return future completed with the result of the check
+     */
+    private @NotNull CompletableFuture<UpdateResult> enqueue(@NotNull Request request) {
+        UpdateMetrics metrics = this.metrics;
+        CheckTrace trace = Objects.requireNonNull(request.tag(CheckTrace.class));
+        CheckRecording recording = CheckRecording.start(getRepository(), getMode());
+        long start = System.nanoTime();
+
+        CompletableFuture<UpdateResult> result = send(request, trace, metrics);
+        result.whenComplete((done, ex) -> {
+            long latency = System.nanoTime() - start;
+
+            CheckTrace answered = trace.answered();
+            if (answered.hasCalls())
+                metrics.timingRecorded(getRepository(), answered.toTiming());
+
+            if (ex == null) {
+                metrics.checkCompleted(getRepository(), latency, done.getSource());
+                if (recording != null)
+                    recording.completed(done, answered);
+            } else {
+                metrics.checkFailed(getRepository(), latency, ex);
+                if (recording != null)
+                    recording.failed(ex, answered);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Sends the request for the latest release, or answers with the last result if the rate limit budget is used up.
+     * With the fallback chain the other sources are tried instead, see {@link #setFallback(boolean)}.
+     * <p>
+     * A check attaches to the request of a running check of the same repository, token, mode, deadlines, hedging and
+     * fallback instead of sending its own, and compares the received release with its own version. Only the check that
+     * sent the request reports its timing, so one request is never counted twice
+     *
+     * @param request the request built by {@link #newRequest()}
+     * @param trace   the trace of the check
+     * @param metrics the metrics of the check
+     * @return future completed with the result of the check
+     */
+    private @NotNull CompletableFuture<UpdateResult> send(@NotNull Request request, @NotNull CheckTrace trace, @NotNull UpdateMetrics metrics) {
+        boolean[] started = new boolean[1];
+        CompletableFuture<Release> release = FLIGHTS.join(flightKey(request), () -> {
+            started[0] = true;
+            return fallback ? fetchWithFallback(request, trace, metrics) : fetchGoverned(request, trace, metrics);
+        });
+
+        boolean coalesced = !started[0];
+        if (coalesced) {
+            trace.setCacheOutcome(CheckTrace.CacheOutcome.COALESCED);
+            metrics.checkCoalesced(getRepository());
+        }
+
+        CompletableFuture<UpdateResult> result = new CompletableFuture<>();
+        release.whenComplete((done, ex) -> {
+            try {
+                if (done != null) {
+                    if (!coalesced && done.trace() != null && done.trace().answered() != trace)
+                        trace.answeredBy(done.trace());
+                    result.complete(compareVersions(version, done.latest(), done.source(), done.checkedAt(), coalesced ? null : done.timing()));
+                    return;
+                }
+
+                UpdateResult last = lastResult.get();
+                if (last != null && rateLimited(ex)) {
+                    trace.setCacheOutcome(CheckTrace.CacheOutcome.LAST_RESULT);
+                    metrics.cacheHit(getRepository());
+                    result.complete(last);
+                } else
+                    result.completeExceptionally(ex);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+
+        result.whenComplete((done, ex) -> {
+            if (ex != null)
+                release.cancel(true);
+        });
+
+        return result;
+    }
+
+    /**
+     * Returns the key of a request of this checker. Checkers with the same key send the same request
+     *
+     * @param request the request built by {@link #newRequest()}
+     * @return the key
+     */
+    private @NotNull FlightKey flightKey(@NotNull Request request) {
+        Version.Type channel = token != null ? releaseChannel : null;
+        Deadlines deadlines = request.tag(Deadlines.class);
+        boolean fallback = this.fallback;
+
+        return new FlightKey(uri, tokenIdentity, getMode(), channel, deadlines, hedging, fallback,
+                fallback ? apiBudget : null, fallback ? publicBudget : null);
+    }
+
+    /**
+     * Sends the request for the latest release if the rate limit governor allows it
+     *
+     * @param request the request built by {@link #newRequest()}
+     * @param trace   the trace of the check
+     * @param metrics the metrics of the check
+     * @return future completed with the received release, or exceptionally if the rate limit budget is used up
+     */
+    private @NotNull CompletableFuture<Release> fetchGoverned(@NotNull Request request, @NotNull CheckTrace trace, @NotNull UpdateMetrics metrics) {
+        if (governor != null && !governor.tryAcquire(System.currentTimeMillis()))
+            return CompletableFuture.failedFuture(rateLimitExceeded(governor));
+
+        return fetch(request, trace, metrics);
+    }
+
+    /**
+     * Tries the sources of the fallback chain: the conditional api request if a token is set, the redirect of the
+     * public release page and the release cache
+     *
+     * @param request the request built by {@link #newRequest()}
+     * @param trace   the trace of the check, the traces of the fallback requests are marked as answering it
+     * @param metrics the metrics of the check
+     * @return future completed with the release of the first source that answered
+     */
+    private @NotNull CompletableFuture<Release> fetchWithFallback(@NotNull Request request, @NotNull CheckTrace trace, @NotNull UpdateMetrics metrics) {
+        FallbackChain<Release> chain = new FallbackChain<>();
+
+        if (token != null) {
+            chain.then(() -> fetchGoverned(request, trace, metrics), apiBudget);
+            chain.then(() -> {
+                Request redirect = newRequestBuilder().url(publicUri.toString()).head().build();
+                CheckTrace redirectTrace = Objects.requireNonNull(redirect.tag(CheckTrace.class));
+
+                trace.answeredBy(redirectTrace);
+                return fetch(redirect, redirectTrace, metrics);
+            }, publicBudget);
+        } else
+            chain.then(() -> fetch(request, trace, metrics), publicBudget);
+
+        chain.then(() -> {
+            ReleaseCache.Entry cached = newest(RELEASE_CACHE.get(uri), RELEASE_CACHE.get(publicUri));
+            if (cached == null)
+                return null;
+
+            CheckTrace answered = trace.answered();
+            answered.setCacheOutcome(CheckTrace.CacheOutcome.FALLBACK);
+            metrics.cacheHit(getRepository());
+            return CompletableFuture.completedFuture(new Release(cached.latest(), UpdateResult.Source.CACHE, cached.fetchedAt(), null, answered));
+        }, null);
+
+        return chain.start();
+    }
+
+    /**
+     * Sends a request for the latest release without asking the rate limit governor. Requests to the github api use the
+     * release scan if a channel is tracked
+     *
+     * @param request the request, to the github api if it carries the token, else to the public release page
+     * @param trace   the trace of the request
+     * @param metrics the metrics of the check
+     * @return future completed with the received release
+     */
+    private @NotNull CompletableFuture<Release> fetch(@NotNull Request request, @NotNull CheckTrace trace, @NotNull UpdateMetrics metrics) {
+        boolean api = request.header("Authorization") != null;
+
+        Version.Type channel = this.releaseChannel;
+        if (channel != null && api)
+            return scanReleases(channel, trace, metrics);
+
+        CompletableFuture<Release> result = new CompletableFuture<>();
+        Callback callback = api ? new GithubAPICallback(result, metrics) : new GithubPublicCallback(result, metrics);
+
+        HedgedCall.enqueue(clientFor(request), request, callback, result, hedging, () -> {
+            if (api && governor != null && !governor.tryAcquire(System.currentTimeMillis()))
+                return false;
+
+            metrics.requestHedged(getRepository());
+            return true;
+        });
+
+        return result;
+    }
+
+    /**
+     * Returns if a check failed because the rate limit governor denied its request
+     *
+     * @param failure the failure of the check
+     * @return true if the rate limit budget is used up
+     */
+    private static boolean rateLimited(@NotNull Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        return cause instanceof UpdateCheckException exception && exception.getStatusCode() == 0;
+    }
+
+    /**
+     * Creates the failure of a check denied by the rate limit governor
+     *
+     * @param governor the governor of the token
+     * @return the failure
+     */
+    private static @NotNull UpdateCheckException rateLimitExceeded(@NotNull RateLimitGovernor governor) {
+        Duration retryAfter = Duration.between(Instant.now(), governor.getResetAt());
+        return new UpdateCheckException("The rate limit of the token is used up until " + governor.getResetAt() + ".", 0, retryAfter);
+    }
+
+    /**
+     * Returns the cached release fetched last
+     *
+     * @param first  a cached release, can be null
+     * @param second another cached release, can be null
+     * @return the release fetched last or null if both are null
+     */
+    private static @Nullable ReleaseCache.Entry newest(@Nullable ReleaseCache.Entry first, @Nullable ReleaseCache.Entry second) {
+        if (first == null || (second != null && second.fetchedAt() > first.fetchedAt()))
+            return second;
+        else
+            return first;
+    }
+
+    /**
+     * Builds the request for the latest release of this repository
+     *
+     * @return the request, authenticated if a token is set
+     * @throws MalformedURLException throws if the repository uri is no valid url
+     */
+    private @NotNull Request newRequest() throws MalformedURLException {
         if (token != null) {
-            Headers headers = new Headers.Builder()
-                    .add("Accept", "application/vnd.github+json")
-                    .add("Authorization", "Bearer " + token)
-                    .add("X-GitHub-Api-Version", "2022-11-28").build();
+            Headers.Builder headers = apiHeaders(token);
+
+            ReleaseCache.Entry cached = RELEASE_CACHE.get(uri);
+            if (cached != null) {
+                if (cached.etag() != null)
+                    headers.add("If-None-Match", cached.etag());
+                if (cached.lastModified() != null)
+                    headers.add("If-Modified-Since", cached.lastModified());
+            }
+
+            return newRequestBuilder().url(uri.toURL()).headers(headers.build()).build();
+        } else if (redirectOnly)
+            return newRequestBuilder().url(uri.toURL()).head().build();
+        else
+            return newRequestBuilder().url(uri.toURL()).build();
+    }
+
+    /**
+     * Creates a request builder tagged with a new trace and the deadlines of this checker
+     *
+     * @return the request builder
+     */
+    private @NotNull Request.Builder newRequestBuilder() {
+        return Deadlines.tag(new Request.Builder(), Deadlines.combine(deadlines, defaultDeadlines)).tag(CheckTrace.class, new CheckTrace());
+    }
+
+    /**
+     * Creates the headers of a github api request
+     *
+     * @param token the github access token
+     * @return the headers
+     */
+    private static @NotNull Headers.Builder apiHeaders(@NotNull String token) {
+        return new Headers.Builder()
+                .add("Accept", "application/vnd.github+json")
+                .add("Authorization", "Bearer " + token)
+                .add("X-GitHub-Api-Version", "2022-11-28");
+    }
+
+    /**
+     * Scans the release list for the newest version of a channel or release
+     *
+     * @param channel the tracked channel
+     * @param trace   the trace of the check
+     * @param metrics the metrics of the check
+     * @return future completed with the newest release of the channel
+     */
+    private @NotNull CompletableFuture<Release> scanReleases(@NotNull Version.Type channel, @NotNull CheckTrace trace, @NotNull UpdateMetrics metrics) {
+        Request releases = newRequestBuilder().url("https://api.github.com/repos/" + author + "/" + repoName + "/releases")
+                .headers(apiHeaders(Objects.requireNonNull(token)).build()).tag(CheckTrace.class, trace).build();
+        ReleaseScan scan = new ReleaseScan(client, releases, channel, governor, getRepository(), metrics);
+
+        CompletableFuture<Version> scanned = scan.start();
+        CompletableFuture<Release> result = scanned.thenApply(latest ->
+                new Release(latest, UpdateResult.Source.API, System.currentTimeMillis(), trace.toTiming(), trace));
 
-            Request request = new Request.Builder().url(uri.toURL()).headers(headers).build();
+        result.whenComplete((done, ex) -> {
+            if (ex instanceof CancellationException || ex instanceof TimeoutException)
+                scanned.cancel(true);
+        });
 
-            client.newCall(request).enqueue(new GithubAPICallback(version));
-        } else{
-            Request request = new Request.Builder().url(uri.toURL()).build();
-            client.newCall(request).enqueue(new GithubPublicCallback(version));
+        return result;
+    }
+
+    /**
+     * Returns how this checker reads the latest release
+     *
+     * @return public, redirect, api or scan
+     */
+    private @NotNull String getMode() {
+        if (token != null)
+            return releaseChannel != null ? "scan" : "api";
+        else
+            return redirectOnly ? "redirect" : "public";
+    }
+
+    /**
+     * Returns the client used for a request. Head requests of the redirect only mode use a client derived from the
+     * checker's client that does not follow redirects, sharing its connections
+     *
+     * @param request the request to send
+     * @return the client for the request
+     */
+    private @NotNull OkHttpClient clientFor(@NotNull Request request) {
+        if (!request.method().equals("HEAD"))
+            return client;
+
+        OkHttpClient redirectClient = this.redirectClient;
+        if (redirectClient == null) {
+            redirectClient = client.newBuilder().followRedirects(false).build();
+            this.redirectClient = redirectClient;
         }
+
+        return redirectClient;
+    }
+
+    /**
+     * Sets the latest version found by someone else than this checker, for example a batch
+     *
+     * @param latest latest available version
+     * @return the result of the comparison
+     */
+    @NotNull UpdateResult applyLatest(@NotNull Version latest) {
+        return compareVersions(version, latest, UpdateResult.Source.GRAPHQL, System.currentTimeMillis(), null);
     }
 
     public void notifyStatus() {
+        notifyStatus(lastResult.get());
+    }
+
+    /**
+     * Sends the update message of a result if there is an update available
+     *
+     * @param result the result to notify about
+     */
+    private void notifyStatus(@Nullable UpdateResult result) {
         if (logger != null) {
-            if (latestVersion != null) {
-                if (updateAvailable) {
+            if (result != null) {
+                if (result.isUpdateAvailable()) {
                     if (updateMessage == null) {
-                        logger.info("There is a newer version of " + repoName + " (" + latestVersion.get() + ")! Current version: " + version.get());
+                        logger.info("There is a newer version of " + repoName + " (" + result.getLatestVersion() + ")! Current version: " + version.get());
                     } else {
                         String message = updateMessage.replace("@name", repoName)
-                                .replace("@latestVersion", latestVersion.get())
+                                .replace("@latestVersion", result.getLatestVersion())
                                 .replace("@currentVersion", version.get());
 
                         logger.info(message);
@@ -135,68 +657,297 @@ public class UpdateChecker {
     /**
      * Compares the versions and sets the update status
      *
-     * @param using  version that is currently used
-     * @param latest latest available version
+     * @param using     version that is currently used
+     * @param latest    latest available version
+     * @param source    where the latest version came from
+     * @param checkedAt epoch milliseconds the latest version was received
+     * @param timing    the network timing of the check, null if no request was sent
+     * @return the result of the comparison
      */
-    private void compareVersions(@NotNull Version using, @NotNull Version latest) {
-        this.latestVersion = latest;
-
-        switch (using.compareTo(latest)) {
-            case 1, 0 -> updateAvailable = false;
-            case -1 -> updateAvailable = true;
+    private @NotNull UpdateResult compareVersions(@NotNull Version using, @NotNull Version latest, @NotNull UpdateResult.Source source, long checkedAt,
+                                                  @Nullable CheckTiming timing) {
+        boolean updateAvailable = switch (using.compareTo(latest)) {
+            case 1, 0 -> false;
+            case -1 -> true;
             default -> throw new RuntimeException("There is an unknown api error!");
+        };
+
+        VersionConstraint constraint = this.updateConstraint;
+        if (updateAvailable && constraint != null)
+            updateAvailable = constraint.matches(latest);
+
+        UpdateResult result = new UpdateResult(getRepository(), using.get(), latest.get(), updateAvailable, Instant.ofEpochMilli(checkedAt), source, timing);
+
+        if (publish(result) && autoNotify)
+            notifyStatus(result);
+
+        return result;
+    }
+
+    /**
+     * Publishes a result unless a result received later is already published, so concurrent checks never go back to an older state
+     *
+     * @param result the result to publish
+     * @return true if the result got published
+     */
+    private boolean publish(@NotNull UpdateResult result) {
+        return lastResult.accumulateAndGet(result, (current, next) ->
+                current == null || !next.getCheckedAt().isBefore(current.getCheckedAt()) ? next : current) == result;
+    }
+
+    /**
+     * Returns the checked repository
+     *
+     * @return the repository in the format author/name
+     */
+    private @NotNull String getRepository() {
+        return author + "/" + repoName;
+    }
+
+    /**
+     * Returns the canonical version of a release tag. Everything before the last slash of the tag is ignored
+     *
+     * @param tag        the tag name of the release
+     * @param preRelease if the release is marked as prerelease
+     * @return the version of the tag
+     */
+    static @NotNull Version parseTag(@NotNull String tag, boolean preRelease) {
+        return Version.of(tagVersion(tag), preRelease);
+    }
+
+    /**
+     * Returns the version string of a release tag, the part after its last slash
+     *
+     * @param tag the tag name of the release
+     * @return the version string
+     */
+    static @NotNull String tagVersion(@NotNull String tag) {
+        return tag.substring(tag.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Reads the latest version from the redirect of the public release page. In the redirect only mode the version is
+     * read from the location of the redirect, else from the url of the followed release page
+     *
+     * @param response the response of the public release page
+     * @return the latest version
+     * @throws IOException throws if the repository is not reachable or has no release
+     */
+    private @NotNull Version readPublicRelease(@NotNull Response response) throws IOException {
+        if (response.code() == 404)
+            throw new UpdateCheckException("Could not connect to this repo. This could be due to the repository being private, if so try using the other version method with the github api, or it does not exists.", response);
+
+        HttpUrl latestURL;
+        if (response.isRedirect()) {
+            String location = response.header("Location");
+            latestURL = location == null ? null : response.request().url().resolve(location);
+
+            if (latestURL == null)
+                throw new IOException("No version found!");
+        } else if (response.isSuccessful()) {
+            latestURL = response.request().url();
+        } else
+            throw new UpdateCheckException("Could not get the release page of this repo.", response);
+
+        String[] urlParts = latestURL.toString().split("/");
+
+        if (urlParts.length != 8) {
+            throw new IOException("No version found!");
+        }
+
+        Version latest = Version.of(urlParts[urlParts.length - 1]);
+        RELEASE_CACHE.put(publicUri, new ReleaseCache.Entry(latest, null, null, response.receivedResponseAtMillis()));
+
+        return latest;
+    }
+
+    /**
+     * Reads the latest version from the release json of the github api. A <i>304 Not Modified</i> answer to a
+     * conditional request reuses the cached version, other answers replace the cached release. The rate limit
+     * headers of every answer update the governor of the token
+     *
+     * @param response the response of the github api
+     * @param trace    the trace of the check, can be null
+     * @param metrics  the metrics of the check
+     * @return the latest version
+     * @throws IOException throws if the repository is not reachable or the token has no access
+     */
+    private @NotNull Version readApiRelease(@NotNull Response response, @Nullable CheckTrace trace, @NotNull UpdateMetrics metrics) throws IOException {
+        if (governor != null) {
+            governor.update(response);
+            if (governor.getRemaining() >= 0)
+                metrics.rateLimitUpdated(governor.getRemaining(), governor.getLimit());
+        }
+
+        ReleaseCache.Entry cached = RELEASE_CACHE.get(uri);
+
+        if (response.code() == 304 && cached != null) {
+            if (trace != null)
+                trace.setCacheOutcome(CheckTrace.CacheOutcome.NOT_MODIFIED);
+            metrics.notModified(getRepository());
+            RELEASE_CACHE.put(uri, cached.refreshed(response.receivedResponseAtMillis()));
+            return cached.latest();
         }
 
-        if (autoNotify)
-            notifyStatus();
+        if (response.code() != 200 || response.body() == null)
+            throw new UpdateCheckException("Could not get data from this repo. This could be due to the repository not existing or a wrong token with no read permission on the releases.", response);
+
+        Version latest = readReleaseJson(response.body());
+        if (trace != null)
+            trace.setCacheOutcome(CheckTrace.CacheOutcome.MISS);
+        RELEASE_CACHE.put(uri, new ReleaseCache.Entry(latest, response.header("ETag"), response.header("Last-Modified"), response.receivedResponseAtMillis()));
+
+        return latest;
     }
 
     /**
-     * Removes the version prefix
+     * Reads the version of a release json. The json is streamed and reading stops as soon as the tag and prerelease flag
+     * are found, so the release notes and assets behind them are never materialised
      *
-     * @param version the original version string
-     * @return the version string without prefix
+     * @param body the body containing the release json
+     * @return the version of the release
+     * @throws IOException throws if the json could not be read or contains no version
      */
-    @Contract(pure = true)
-    private static @NotNull String removePrefix(@NotNull String version) {
-        return version.replaceFirst("^v", "");
+    private static @NotNull Version readReleaseJson(@NotNull ResponseBody body) throws IOException {
+        String tag = null;
+        Boolean preRelease = null;
+
+        try (JsonReader reader = new JsonReader(body.charStream())) {
+            reader.beginObject();
+
+            while ((tag == null || preRelease == null) && reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "tag_name" -> tag = reader.nextString();
+                    case "prerelease" -> preRelease = reader.nextBoolean();
+                    default -> reader.skipValue();
+                }
+            }
+        }
+
+        if (tag == null || preRelease == null)
+            throw new IOException("No version found!");
+
+        return parseTag(tag, preRelease);
+    }
+
+    /**
+     * Holder of the shared http client, so it only gets created once the first checker needs it
+     */
+    private static final class SharedClient {
+        /**
+         * Maximum number of concurrent calls to one host. All checkers talk to the same two hosts, so the okhttp default of 5 would queue most of them
+         */
+        private static final int MAX_REQUESTS_PER_HOST = 64;
+
+        private static final OkHttpClient INSTANCE = createClient();
+
+        /**
+         * Creates the shared client
+         *
+         * @return the shared client
+         */
+        private static @NotNull OkHttpClient createClient() {
+            Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+            return new OkHttpClient.Builder().dispatcher(dispatcher).addInterceptor(Deadlines.INTERCEPTOR)
+                    .eventListenerFactory(new CheckTrace.Factory(call -> EventListener.NONE)).build();
+        }
+    }
+
+    /**
+     * Reports a closed response to the metrics
+     *
+     * @param call     the call of the response
+     * @param response the closed response
+     * @param metrics  the metrics of the check
+     */
+    private void received(@NotNull Call call, @NotNull Response response, @NotNull UpdateMetrics metrics) {
+        CheckTrace trace = CheckTrace.of(call);
+        metrics.responseReceived(getRepository(), response.code(), trace == null ? 0 : trace.getBytesRead());
+    }
+
+    /**
+     * Returns the network timing of a call
+     *
+     * @param call the finished call
+     * @return the timing or null if the call has no trace
+     */
+    private static @Nullable CheckTiming timingOf(@NotNull Call call) {
+        CheckTrace trace = CheckTrace.of(call);
+        return trace == null ? null : trace.toTiming();
+    }
+
+    /**
+     * Latest release received by a check, shared with the checks attached to its request
+     *
+     * @param latest    the latest version
+     * @param source    where the latest version came from
+     * @param checkedAt epoch milliseconds the latest version was received
+     * @param timing    the network timing of the request, null if no request answered
+     * @param trace     the trace of the request that answered, can be null
+     */
+    private record Release(@NotNull Version latest, @NotNull UpdateResult.Source source, long checkedAt, @Nullable CheckTiming timing,
+                           @Nullable CheckTrace trace) {
+    }
+
+    /**
+     * Key of the requests in flight. Checkers with the same key send the same request, so one request answers all of
+     * them. Everything changing how the request is sent is part of the key, so a check never waits on a request sent
+     * with other deadlines than its own
+     *
+     * @param uri          the repository uri
+     * @param identity     identity of the token, null without a token
+     * @param mode         how the latest release is read
+     * @param channel      the channel of a release scan, null if no release list is scanned
+     * @param deadlines    the combined deadlines of the request, null for the timeouts of the client
+     * @param hedging      if slow requests are hedged
+     * @param fallback     if the fallback chain is used
+     * @param apiBudget    budget of the github api in the fallback chain, null without fallback or budget
+     * @param publicBudget budget of the public release page in the fallback chain, null without fallback or budget
+     */
+    private record FlightKey(@NotNull URI uri, @Nullable String identity, @NotNull String mode, @Nullable Version.Type channel,
+                             @Nullable Deadlines deadlines, boolean hedging, boolean fallback, @Nullable Duration apiBudget,
+                             @Nullable Duration publicBudget) {
     }
 
     /**
      * Callback used for public github repos
      */
     private class GithubPublicCallback implements Callback {
-        private final Version usingVersion;
+        private final CompletableFuture<Release> result;
+        private final UpdateMetrics metrics;
 
         /**
          * Creates a callback
          *
-         * @param version the current used version
+         * @param result  the future to complete with the received release
+         * @param metrics the metrics of the check
          */
-        public GithubPublicCallback(Version version) {
-            this.usingVersion = version;
+        public GithubPublicCallback(CompletableFuture<Release> result, UpdateMetrics metrics) {
+            this.result = result;
+            this.metrics = metrics;
         }
 
         @Override
-        public void onResponse(@NotNull Call call, @NotNull Response response) throws IOException {
-            if (response.code() == 404)
-                throw new ConnectException("Could not connect to this repo. This could be due to the repository being private, if so try using the other version method with the github api, or it does not exists.");
-
-            String latestURL = response.request().url().toString();
-            String[] urlParts = latestURL.split("/");
+        public void onResponse(@NotNull Call call, @NotNull Response response) {
+            try {
+                Version latest;
+                try (response) {
+                    latest = readPublicRelease(response);
+                } finally {
+                    received(call, response, metrics);
+                }
 
-            if (urlParts.length != 8) {
-                throw new IOException("No version found!");
+                result.complete(new Release(latest, UpdateResult.Source.PUBLIC, response.receivedResponseAtMillis(), timingOf(call), CheckTrace.of(call)));
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
             }
-
-            Version latest = new Version(removePrefix(urlParts[urlParts.length - 1]));
-
-            compareVersions(usingVersion, latest);
         }
 
         @Override
         public void onFailure(@NotNull Call call, @NotNull IOException ex) {
-            throw new RuntimeException("There was an error during the execution of the request", ex);
+            result.completeExceptionally(ex);
         }
     }
 
@@ -205,35 +956,39 @@ public class UpdateChecker {
      * Callback for the github api
      */
     private class GithubAPICallback implements Callback {
-        private final Version usingVersion;
+        private final CompletableFuture<Release> result;
+        private final UpdateMetrics metrics;
 
         /**
          * Creates a callback
          *
-         * @param version the current used version
+         * @param result  the future to complete with the received release
+         * @param metrics the metrics of the check
          */
-        public GithubAPICallback(Version version) {
-            this.usingVersion = version;
+        public GithubAPICallback(CompletableFuture<Release> result, UpdateMetrics metrics) {
+            this.result = result;
+            this.metrics = metrics;
         }
 
         @Override
-        public void onResponse(@NotNull Call call, @NotNull Response response) throws IOException {
-            if (response.code() != 200 || response.body() == null)
-                throw new ConnectException("Could not get data from this repo. This could be due to the repository not existing or a wrong token with no read permission on the releases.");
-
-            String responseBody = response.body().string();
-            JsonObject bodyJson = (JsonObject) JsonParser.parseString(responseBody);
-
-            String[] tagParts = bodyJson.get("tag_name").getAsString().split("/");
-            boolean preRelease = bodyJson.get("prerelease").getAsBoolean();
-            Version latest = new Version(removePrefix(tagParts[tagParts.length - 1]), preRelease);
+        public void onResponse(@NotNull Call call, @NotNull Response response) {
+            try {
+                Version latest;
+                try (response) {
+                    latest = readApiRelease(response, CheckTrace.of(call), metrics);
+                } finally {
+                    received(call, response, metrics);
+                }
 
-            compareVersions(usingVersion, latest);
+                result.complete(new Release(latest, UpdateResult.Source.API, response.receivedResponseAtMillis(), timingOf(call), CheckTrace.of(call)));
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
         }
 
         @Override
         public void onFailure(@NotNull Call call, @NotNull IOException ex) {
-            throw new RuntimeException("There was an error during the execution of the request", ex);
+            result.completeExceptionally(ex);
         }
     }
 
@@ -250,13 +1005,108 @@ public class UpdateChecker {
         this.updateMessage = message;
     }
 
+    /**
+     * Sets if public checks only read the location of the redirect to the latest release. The checker then sends a head
+     * request without following the redirect, so the release page is never downloaded. Has no effect when the github api is used
+     *
+     * @param redirectOnly true to only read the redirect
+     */
+    public void setRedirectOnly(boolean redirectOnly) {
+        this.redirectOnly = redirectOnly;
+    }
+
+    /**
+     * Sets the release channel tracked by this checker. Instead of the latest release, the release list is scanned for
+     * the newest version of the channel or a release, so pre-releases can be tracked. Only works with the github api
+     *
+     * @param channel the tracked channel, null to only track the latest release
+     * @throws IllegalStateException throws if this checker does not use the github api
+     */
+    public void setReleaseChannel(@Nullable Version.Type channel) {
+        if (channel != null && token == null)
+            throw new IllegalStateException("The release list can only be scanned with the github api. Please provide a token!");
+
+        this.releaseChannel = channel;
+    }
+
+    /**
+     * Sets the metrics the checks of this checker report to, for example an {@link InMemoryUpdateMetrics} shared by all checkers
+     *
+     * @param metrics the metrics, null to record nothing
+     */
+    public void setMetrics(@Nullable UpdateMetrics metrics) {
+        this.metrics = metrics == null ? UpdateMetrics.NONE : metrics;
+    }
+
+    /**
+     * Sets the timeouts of this checker. Timeouts left null are taken from {@link #setDefaultDeadlines(Duration, Duration, Duration)}
+     * or the http client. The call deadline covers a whole request including redirects, use {@link #checkAsync(Duration)}
+     * for a deadline of the whole check
+     *
+     * @param connect timeout of opening a connection, can be null
+     * @param read    timeout between two reads of a response, can be null
+     * @param call    deadline of a whole request including redirects, can be null
+     * @throws IllegalArgumentException throws if a timeout is shorter than one millisecond or longer than {@link Integer#MAX_VALUE} milliseconds
+     */
+    public void setDeadlines(@Nullable Duration connect, @Nullable Duration read, @Nullable Duration call) {
+        this.deadlines = connect == null && read == null && call == null ? null : new Deadlines(connect, read, call);
+    }
+
+    /**
+     * Sets if slow requests are hedged. If there is no response after the usual p95 latency of the host, the request
+     * is sent a second time and the first response is taken. Hedges are capped to a share of the recent requests, see
+     * {@link #setMaxHedgeRatio(double)}, and take from the rate limit budget of the token. Release scans are never hedged
+     *
+     * @param hedging true to hedge slow requests
+     */
+    public void setHedging(boolean hedging) {
+        this.hedging = hedging;
+    }
+
+    /**
+     * Sets if the checks fall back to other sources of the latest release. The sources are tried in this order until
+     * one answers: the conditional request to the github api if a token is set, the redirect of the public release page
+     * without downloading it, then the cached release. A source is skipped once it failed, ran out of its budget or
+     * the rate limit budget of the token is used up. The source that answered is the {@link UpdateResult#getSource()}
+     *
+     * @param fallback true to fall back to the other sources
+     * @see #setFallbackBudgets(Duration, Duration)
+     */
+    public void setFallback(boolean fallback) {
+        this.fallback = fallback;
+    }
+
+    /**
+     * Sets how long each source of the fallback chain may take before the next one is tried. Both default to 5 seconds
+     *
+     * @param api        budget of the github api, null to only limit it by the deadlines
+     * @param publicPage budget of the redirect of the public release page, null to only limit it by the deadlines
+     * @see #setFallback(boolean)
+     */
+    public void setFallbackBudgets(@Nullable Duration api, @Nullable Duration publicPage) {
+        this.apiBudget = api;
+        this.publicBudget = publicPage;
+    }
+
+    /**
+     * Sets the range of versions counted as update, for example <code>&gt;=2.3 &lt;3.0</code> or <code>~2.3</code>.
+     * Newer versions outside the range do not report an update
+     *
+     * @param constraint the range, see {@link VersionConstraint}, null to accept every newer version
+     * @throws IllegalArgumentException throws if the range is invalid
+     */
+    public void setUpdateConstraint(@Nullable String constraint) {
+        this.updateConstraint = constraint == null ? null : VersionConstraint.parse(constraint);
+    }
+
     /**
      * Gets if there is an update available
      *
      * @return true if there is an update available
      */
     public boolean getUpdateStatus() {
-        return updateAvailable;
+        UpdateResult result = lastResult.get();
+        return result != null && result.isUpdateAvailable();
     }
 
     /**
@@ -266,9 +1116,31 @@ public class UpdateChecker {
      */
     @Nullable
     public String getLatestVersion() {
-        if (latestVersion != null)
-            return latestVersion.get();
+        UpdateResult result = lastResult.get();
+
+        if (result != null)
+            return result.getLatestVersion();
         else
             return null;
     }
+
+    /**
+     * Returns the rate limit governor of the token, which also shows the remaining budget
+     *
+     * @return the governor or null if this checker does not use the github api
+     */
+    @Nullable
+    public RateLimitGovernor getRateLimitGovernor() {
+        return governor;
+    }
+
+    /**
+     * Returns the latest result of this checker as one consistent snapshot
+     *
+     * @return the latest result or null if there is no result probably due to no check done before
+     */
+    @Nullable
+    public UpdateResult getLastResult() {
+        return lastResult.get();
+    }
 }
@@ -0,0 +1,310 @@
+package de.sage.util;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import okhttp3.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.ConnectException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Checks many github repositories at once over one http client. Without a token every repository is checked with its
+ * own request, with a token the latest releases are fetched in chunks with the github graphql api
+ *
+ * @author SageSphinx63920
+ */
+public class UpdateCheckerBatch {
+
+    /**
+     * Maximum number of repositories fetched with one graphql query
+     */
+    private static final int GRAPHQL_CHUNK_SIZE = 50;
+    private static final HttpUrl GRAPHQL_URL = HttpUrl.get("https://api.github.com/graphql");
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private final int maxConcurrency;
+    private final @Nullable Logger logger;
+    private final @Nullable String token;
+    private final @NotNull OkHttpClient client;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * Creates a batch for <strong>ONLY public github repositories</strong>
+     *
+     * @param maxConcurrency maximum number of requests running at the same time
+     * @param logger         logger to send failed checks to
+     */
+    public UpdateCheckerBatch(int maxConcurrency, @Nullable Logger logger) {
+        this(maxConcurrency, logger, null, UpdateChecker.getSharedClient());
+    }
+
+    /**
+     * Creates a batch for <strong>public or private github repositories using the github graphql api</strong>
+     *
+     * @param maxConcurrency maximum number of requests running at the same time
+     * @param logger         logger to send failed checks to
+     * @param token          github access token with access to the repositories' releases
+     */
+    public UpdateCheckerBatch(int maxConcurrency, @Nullable Logger logger, @NotNull String token) {
+        this(maxConcurrency, logger, token, UpdateChecker.getSharedClient());
+    }
+
+    /**
+     * Creates a batch using an own http client
+     *
+     * @param maxConcurrency maximum number of requests running at the same time
+     * @param logger         logger to send failed checks to
+     * @param token          github access token with access to the repositories' releases. If null only public repositories can be checked
+     * @param client         http client used for all requests of this batch
+     */
+    public UpdateCheckerBatch(int maxConcurrency, @Nullable Logger logger, @Nullable String token, @NotNull OkHttpClient client) {
+        if (maxConcurrency < 1)
+            throw new IllegalArgumentException("The batch needs to run at least one request at the same time!");
+
+        this.maxConcurrency = maxConcurrency;
+        this.logger = logger;
+        this.token = token;
+        this.client = client;
+    }
+
+    /**
+     * Adds a repository to the batch. Adding the same repository again replaces the used version
+     *
+     * @param author  author of the repo
+     * @param name    name of the repo
+     * @param version currently used version
+     * @return this batch
+     */
+    public @NotNull UpdateCheckerBatch add(@NotNull String author, @NotNull String name, @NotNull String version) {
+        UpdateChecker checker = token != null ?
+                new UpdateChecker(author, name, version, false, null, token, client) :
+                new UpdateChecker(author, name, version, false, null, client);
+
+        entries.put(author + "/" + name, new Entry(author, name, checker));
+        return this;
+    }
+
+    /**
+     * Checks all added repositories. Repositories that could not be checked are logged and missing in the result
+     *
+     * @return future completed with the results keyed by the repository in the format author/name once every repository is done
+     */
+    public @NotNull CompletableFuture<Map<String, UpdateResult>> check() {
+        List<Entry> snapshot = List.copyOf(entries.values());
+        Map<String, UpdateResult> results = new ConcurrentHashMap<>();
+        List<Supplier<CompletableFuture<Void>>> tasks = new ArrayList<>();
+
+        if (token != null) {
+            for (int i = 0; i < snapshot.size(); i += GRAPHQL_CHUNK_SIZE) {
+                List<Entry> chunk = snapshot.subList(i, Math.min(i + GRAPHQL_CHUNK_SIZE, snapshot.size()));
+                tasks.add(() -> checkGraphQL(chunk, results));
+            }
+        } else {
+            for (Entry entry : snapshot)
+                tasks.add(() -> checkRest(entry, results));
+        }
+
+        return runBounded(tasks).thenApply(done -> {
+            Map<String, UpdateResult> ordered = new LinkedHashMap<>();
+
+            for (Entry entry : snapshot) {
+                UpdateResult result = results.get(entry.key());
+                if (result != null)
+                    ordered.put(entry.key(), result);
+            }
+
+            return Collections.unmodifiableMap(ordered);
+        });
+    }
+
+    /**
+     * Runs the tasks with at most {@link #maxConcurrency} of them at the same time
+     *
+     * @param tasks the tasks. Their futures must not complete exceptionally
+     * @return future completed once all tasks are done
+     */
+    private @NotNull CompletableFuture<Void> runBounded(@NotNull List<Supplier<CompletableFuture<Void>>> tasks) {
+        AtomicInteger next = new AtomicInteger();
+        CompletableFuture<?>[] lanes = new CompletableFuture<?>[Math.min(maxConcurrency, tasks.size())];
+
+        for (int i = 0; i < lanes.length; i++)
+            lanes[i] = runLane(tasks, next);
+
+        return CompletableFuture.allOf(lanes);
+    }
+
+    /**
+     * Runs the next free task and afterwards the one after it, until none is left
+     *
+     * @param tasks all tasks
+     * @param next  index of the next free task
+     * @return future completed once no task is left
+     */
+    private static @NotNull CompletableFuture<Void> runLane(@NotNull List<Supplier<CompletableFuture<Void>>> tasks, @NotNull AtomicInteger next) {
+        int index = next.getAndIncrement();
+
+        if (index >= tasks.size())
+            return CompletableFuture.completedFuture(null);
+
+        return tasks.get(index).get().thenCompose(done -> runLane(tasks, next));
+    }
+
+    /**
+     * Checks one repository with its own request
+     *
+     * @param entry   the repository
+     * @param results the results to add to
+     * @return future completed once the check is done
+     */
+    private @NotNull CompletableFuture<Void> checkRest(@NotNull Entry entry, @NotNull Map<String, UpdateResult> results) {
+        return entry.checker().checkAsync().handle((result, ex) -> {
+            if (ex != null)
+                fail(entry, ex);
+            else
+                results.put(entry.key(), result);
+
+            return null;
+        });
+    }
+
+    /**
+     * Checks a chunk of repositories with one graphql query
+     *
+     * @param chunk   the repositories
+     * @param results the results to add to
+     * @return future completed once the check is done
+     */
+    private @NotNull CompletableFuture<Void> checkGraphQL(@NotNull List<Entry> chunk, @NotNull Map<String, UpdateResult> results) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+
+        client.newCall(newGraphQLRequest(chunk)).enqueue(new Callback() {
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                try (response) {
+                    if (response.code() != 200 || response.body() == null)
+                        throw new ConnectException("Could not get data from the graphql api. This could be due to a wrong token. Status code: " + response.code());
+
+                    JsonObject data;
+                    try (Reader reader = response.body().charStream()) {
+                        JsonElement body = JsonParser.parseReader(reader);
+                        data = body.getAsJsonObject().getAsJsonObject("data");
+                    }
+
+                    for (int i = 0; i < chunk.size(); i++) {
+                        Entry entry = chunk.get(i);
+                        JsonElement repository = data == null ? null : data.get("r" + i);
+
+                        if (repository == null || repository.isJsonNull()) {
+                            fail(entry, new ConnectException("Could not get data from this repo. This could be due to the repository not existing or the token having no access."));
+                            continue;
+                        }
+
+                        JsonElement release = repository.getAsJsonObject().get("latestRelease");
+                        if (release == null || release.isJsonNull()) {
+                            fail(entry, new IOException("No version found!"));
+                            continue;
+                        }
+
+                        try {
+                            JsonObject releaseJson = release.getAsJsonObject();
+                            Version latest = UpdateChecker.parseTag(releaseJson.get("tagName").getAsString(), releaseJson.get("isPrerelease").getAsBoolean());
+                            results.put(entry.key(), entry.checker().applyLatest(latest));
+                        } catch (RuntimeException e) {
+                            fail(entry, e);
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    chunk.forEach(entry -> {
+                        if (!results.containsKey(entry.key()))
+                            fail(entry, e);
+                    });
+                } finally {
+                    done.complete(null);
+                }
+            }
+
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException ex) {
+                chunk.forEach(entry -> fail(entry, ex));
+                done.complete(null);
+            }
+        });
+
+        return done;
+    }
+
+    /**
+     * Builds the graphql request fetching the latest release of every repository of the chunk. The repositories are
+     * passed as variables, so no name has to be escaped inside the query
+     *
+     * @param chunk the repositories
+     * @return the graphql request
+     */
+    private @NotNull Request newGraphQLRequest(@NotNull List<Entry> chunk) {
+        StringBuilder declarations = new StringBuilder();
+        StringBuilder selections = new StringBuilder();
+        JsonObject variables = new JsonObject();
+
+        for (int i = 0; i < chunk.size(); i++) {
+            Entry entry = chunk.get(i);
+
+            declarations.append(i == 0 ? "" : ",").append("$o").append(i).append(":String!,$n").append(i).append(":String!");
+            selections.append("r").append(i).append(":repository(owner:$o").append(i).append(",name:$n").append(i)
+                    .append("){latestRelease{tagName isPrerelease}}");
+
+            variables.addProperty("o" + i, entry.author());
+            variables.addProperty("n" + i, entry.name());
+        }
+
+        JsonObject body = new JsonObject();
+        body.addProperty("query", "query(" + declarations + "){" + selections + "}");
+        body.add("variables", variables);
+
+        return new Request.Builder()
+                .url(GRAPHQL_URL)
+                .header("Authorization", "Bearer " + token)
+                .post(RequestBody.create(body.toString(), JSON))
+                .build();
+    }
+
+    /**
+     * Logs a failed check
+     *
+     * @param entry the repository
+     * @param ex    the reason of the failure
+     */
+    private void fail(@NotNull Entry entry, @NotNull Throwable ex) {
+        if (logger != null)
+            logger.log(Level.WARNING, "Could not check " + entry.key() + " for updates", ex);
+    }
+
+    /**
+     * Repository of the batch
+     *
+     * @param author  author of the repo
+     * @param name    name of the repo
+     * @param checker checker of the repo
+     */
+    private record Entry(@NotNull String author, @NotNull String name, @NotNull UpdateChecker checker) {
+        /**
+         * Returns the key of the repository in the result
+         *
+         * @return the repository in the format author/name
+         */
+        @NotNull String key() {
+            return author + "/" + name;
+        }
+    }
+}
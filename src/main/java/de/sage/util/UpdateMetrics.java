@@ -0,0 +1,102 @@
+package de.sage.util;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Receiver of the metrics of update checks. All methods do nothing by default, so an implementation only overrides
+ * what it records. The methods are called on the okhttp threads and should return quickly.
+ * <p>
+ * {@link InMemoryUpdateMetrics} is a ready to use implementation
+ *
+ * @author SageSphinx63920
+ */
+public interface UpdateMetrics {
+
+    /**
+     * Metrics that record nothing, used if no metrics are set
+     */
+    UpdateMetrics NONE = new UpdateMetrics() {
+    };
+
+    /**
+     * Called when a check finished with a result
+     *
+     * @param repository   the repository in the format author/name
+     * @param latencyNanos nanoseconds from the start of the check until the result
+     * @param source       where the latest version came from
+     */
+    default void checkCompleted(@NotNull String repository, long latencyNanos, @NotNull UpdateResult.Source source) {
+    }
+
+    /**
+     * Called when a check failed
+     *
+     * @param repository   the repository in the format author/name
+     * @param latencyNanos nanoseconds from the start of the check until the failure
+     * @param cause        the cause of the failure
+     */
+    default void checkFailed(@NotNull String repository, long latencyNanos, @NotNull Throwable cause) {
+    }
+
+    /**
+     * Called when a check that sent requests finished, also if it failed
+     *
+     * @param repository the repository in the format author/name
+     * @param timing     the time spent in the network phases of the check
+     */
+    default void timingRecorded(@NotNull String repository, @NotNull CheckTiming timing) {
+    }
+
+    /**
+     * Called for every response received from github
+     *
+     * @param repository the repository in the format author/name
+     * @param statusCode the http status code
+     * @param bytesRead  bytes of the response body the checker read. A body closed unread, like the release page of a
+     *                   public check, counts as 0 and the part of the release json after the version is not counted
+     */
+    default void responseReceived(@NotNull String repository, int statusCode, long bytesRead) {
+    }
+
+    /**
+     * Called when github answered a conditional request with <i>304 Not Modified</i> and the cached release was reused
+     *
+     * @param repository the repository in the format author/name
+     */
+    default void notModified(@NotNull String repository) {
+    }
+
+    /**
+     * Called when a slow request was sent a second time, see {@link UpdateChecker#setHedging(boolean)}
+     *
+     * @param repository the repository in the format author/name
+     */
+    default void requestHedged(@NotNull String repository) {
+    }
+
+    /**
+     * Called when a check attached to the request of a running check of the same repository instead of sending its own
+     *
+     * @param repository the repository in the format author/name
+     */
+    default void checkCoalesced(@NotNull String repository) {
+    }
+
+    /**
+     * Called when a check was answered without a new release, with the last result because the rate limit budget is
+     * used up or with the cached release because every other source of the fallback chain failed
+     *
+     * @param repository the repository in the format author/name
+     */
+    default void cacheHit(@NotNull String repository) {
+    }
+
+    /**
+     * Called when github reported the rate limit of the token
+     *
+     * @param remaining the remaining requests
+     * @param limit     the requests per rate limit window
+     */
+    default void rateLimitUpdated(int remaining, int limit) {
+    }
+}
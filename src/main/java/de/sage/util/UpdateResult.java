@@ -0,0 +1,135 @@
+package de.sage.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Instant;
+
+/**
+ * Immutable result of an update check
+ *
+ * @author SageSphinx63920
+ */
+public final class UpdateResult {
+
+    private final @NotNull String repository;
+    private final @NotNull String currentVersion;
+    private final @NotNull String latestVersion;
+    private final boolean updateAvailable;
+    private final @NotNull Instant checkedAt;
+    private final @NotNull Source source;
+    private final @Nullable CheckTiming timing;
+
+    /**
+     * Creates a result
+     *
+     * @param repository      the repository in the format author/name
+     * @param currentVersion  the currently used version string
+     * @param latestVersion   the latest version string
+     * @param updateAvailable if the latest version is newer than the currently used one
+     * @param checkedAt       the time the latest version was received
+     * @param source          where the latest version came from
+     * @param timing          the network timing of the check, null if no request was sent
+     */
+    UpdateResult(@NotNull String repository, @NotNull String currentVersion, @NotNull String latestVersion, boolean updateAvailable,
+                 @NotNull Instant checkedAt, @NotNull Source source, @Nullable CheckTiming timing) {
+        this.repository = repository;
+        this.currentVersion = currentVersion;
+        this.latestVersion = latestVersion;
+        this.updateAvailable = updateAvailable;
+        this.checkedAt = checkedAt;
+        this.source = source;
+        this.timing = timing;
+    }
+
+    /**
+     * Returns the checked repository
+     *
+     * @return the repository in the format author/name
+     */
+    public @NotNull String getRepository() {
+        return repository;
+    }
+
+    /**
+     * Returns the currently used version string
+     *
+     * @return the currently used version string
+     */
+    public @NotNull String getCurrentVersion() {
+        return currentVersion;
+    }
+
+    /**
+     * Returns the latest version string
+     *
+     * @return the latest version string
+     */
+    public @NotNull String getLatestVersion() {
+        return latestVersion;
+    }
+
+    /**
+     * Gets if there is an update available
+     *
+     * @return true if there is an update available
+     */
+    public boolean isUpdateAvailable() {
+        return updateAvailable;
+    }
+
+    /**
+     * Returns the time the latest version was received
+     *
+     * @return the time the latest version was received
+     */
+    public @NotNull Instant getCheckedAt() {
+        return checkedAt;
+    }
+
+    /**
+     * Returns where the latest version came from
+     *
+     * @return the source of the latest version
+     */
+    public @NotNull Source getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the time spent in the network phases of the check
+     *
+     * @return the timing or null if the latest version was not requested by the check itself
+     */
+    public @Nullable CheckTiming getTiming() {
+        return timing;
+    }
+
+    @Override
+    public String toString() {
+        return "UpdateResult{" + repository + ", current=" + currentVersion + ", latest=" + latestVersion + ", updateAvailable=" + updateAvailable
+                + ", checkedAt=" + checkedAt + ", source=" + source + "}";
+    }
+
+    /**
+     * Source of the latest version
+     */
+    public enum Source {
+        /**
+         * The redirect of the public release page
+         */
+        PUBLIC,
+        /**
+         * The github rest api
+         */
+        API,
+        /**
+         * The github graphql api used by {@link UpdateCheckerBatch}
+         */
+        GRAPHQL,
+        /**
+         * The release cache, when a new checker starts or every other source of the fallback chain failed
+         */
+        CACHE
+    }
+}
@@ -0,0 +1,173 @@
+package de.sage.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+
+/**
+ * Checks update checkers again and again in a fixed interval. A random jitter spreads the checks of many checkers, failed
+ * checks are retried with an exponential backoff that honours the wait time asked for by github.
+ * <p>
+ * All schedulers share one daemon thread. It only enqueues the http calls, so it is never blocked by a slow request
+ *
+ * @author SageSphinx63920
+ */
+public final class UpdateScheduler {
+
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "UpdateChecker Scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final @NotNull Duration interval;
+    private final double jitter;
+    private final @NotNull Duration maxBackoff;
+
+    /**
+     * Creates a scheduler with 10% jitter and a backoff up to 16 times the interval
+     *
+     * @param interval time between two checks
+     */
+    public UpdateScheduler(@NotNull Duration interval) {
+        this(interval, 0.1, interval.multipliedBy(16));
+    }
+
+    /**
+     * Creates a scheduler
+     *
+     * @param interval   time between two checks
+     * @param jitter     share of the interval the delay is randomly moved by, between 0 and 1
+     * @param maxBackoff maximum time between two checks after failures, at least the interval
+     * @throws IllegalArgumentException throws if the interval is not positive, the jitter not between 0 and 1 or the maximum backoff shorter than the interval
+     */
+    public UpdateScheduler(@NotNull Duration interval, double jitter, @NotNull Duration maxBackoff) {
+        if (interval.isNegative() || interval.isZero())
+            throw new IllegalArgumentException("The interval has to be positive!");
+        if (jitter < 0 || jitter > 1)
+            throw new IllegalArgumentException("The jitter has to be between 0 and 1!");
+        if (maxBackoff.compareTo(interval) < 0)
+            throw new IllegalArgumentException("The maximum backoff has to be at least the interval!");
+
+        this.interval = interval;
+        this.jitter = jitter;
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * Starts checking the checker. The first check runs after a random part of the jitter, so checkers scheduled together do not fire together
+     *
+     * @param checker the checker to check
+     * @return the scheduled check, used to stop it
+     */
+    public @NotNull ScheduledCheck schedule(@NotNull UpdateChecker checker) {
+        ScheduledCheck check = new ScheduledCheck(checker);
+        check.scheduleIn((long) (ThreadLocalRandom.current().nextDouble() * jitter * interval.toMillis()));
+        return check;
+    }
+
+    /**
+     * Returns the delay before the next check
+     *
+     * @param failures number of failed checks in a row
+     * @param ex       the reason of the last failure, null if the last check succeeded
+     * @return the delay in milliseconds
+     */
+    long nextDelay(int failures, @Nullable Throwable ex) {
+        long delay = interval.toMillis();
+
+        if (failures > 0) {
+            int shift = Math.min(failures - 1, 62);
+            long backoff = delay > Long.MAX_VALUE >> shift ? Long.MAX_VALUE : delay << shift;
+            delay = Math.min(maxBackoff.toMillis(), backoff);
+        }
+
+        delay = (long) (delay * (1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1)));
+
+        if (ex instanceof UpdateCheckException checkException && checkException.getRetryAfter() != null)
+            delay = Math.max(delay, checkException.getRetryAfter().toMillis());
+
+        return delay;
+    }
+
+    /**
+     * Check scheduled by this scheduler
+     */
+    public final class ScheduledCheck {
+        private final @NotNull UpdateChecker checker;
+
+        private volatile boolean cancelled;
+        private volatile @Nullable Future<?> next;
+        private volatile @Nullable CompletableFuture<UpdateResult> running;
+        private volatile int failures;
+
+        /**
+         * Creates a scheduled check
+         *
+         * @param checker the checker to check
+         */
+        private ScheduledCheck(@NotNull UpdateChecker checker) {
+            this.checker = checker;
+        }
+
+        /**
+         * Schedules the next check
+         *
+         * @param delay delay in milliseconds
+         */
+        private void scheduleIn(long delay) {
+            if (!cancelled)
+                next = EXECUTOR.schedule(this::run, delay, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Runs the check and schedules the next one once it is done. A check that throws right away counts as failed
+         * too, so the checks go on
+         */
+        private void run() {
+            if (cancelled)
+                return;
+
+            CompletableFuture<UpdateResult> check;
+            try {
+                check = checker.checkAsync();
+            } catch (RuntimeException e) {
+                check = CompletableFuture.failedFuture(e);
+            }
+            running = check;
+
+            check.whenComplete((result, ex) -> {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+
+                failures = cause == null ? 0 : failures + 1;
+                scheduleIn(nextDelay(failures, cause));
+            });
+        }
+
+        /**
+         * Returns the number of failed checks in a row
+         *
+         * @return the number of failed checks, 0 if the last check succeeded
+         */
+        public int getFailures() {
+            return failures;
+        }
+
+        /**
+         * Stops checking and cancels a running check
+         */
+        public void cancel() {
+            cancelled = true;
+
+            Future<?> next = this.next;
+            if (next != null)
+                next.cancel(false);
+
+            CompletableFuture<UpdateResult> running = this.running;
+            if (running != null)
+                running.cancel(true);
+        }
+    }
+}
@@ -4,51 +4,309 @@ import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
- * Version object used by the update system
+ * Version object used by the update system. Versions follow semantic versioning 2.0 with any number of numeric
+ * components: <code>int.int.int...(-prerelease)(+build)</code>. Missing components count as zero, a pre-release has a
+ * lower precedence than its release and build metadata is ignored when comparing. Numeric pre-release identifiers
+ * with leading zeros are rejected like semantic versioning demands
+ *
+ * @author SageSphinx63920
  */
-final class Version implements Comparable<Version> {
+public final class Version implements Comparable<Version> {
+
+    /**
+     * Maximum number of interned versions per map. A full map is cleared, so versions no longer used do not stay forever
+     */
+    private static final int MAX_INTERNED = 4096;
+    private static final Map<String, Version> INTERNED = new ConcurrentHashMap<>();
+    private static final Map<String, Version> INTERNED_PRERELEASE = new ConcurrentHashMap<>();
+
+    private static final long[] NO_PRE_RELEASE = new long[0];
+    private static final String[] NO_PRE_RELEASE_IDS = new String[0];
 
+    /**
+     * Marks an alphanumeric identifier in {@link #preRelease}
+     */
+    private static final long ALPHANUMERIC = -1;
+
+    /**
+     * The version string as given, a v prefix is skipped by {@link #start} instead of copying the string
+     */
     private final String version;
     private final Type versionType;
+    /**
+     * Numeric components of the version without suffix, parsed once so comparing never parses again
+     */
+    private final int[] parts;
+    /**
+     * Pre-release identifiers. Numeric identifiers hold their value, alphanumeric ones {@link #ALPHANUMERIC}
+     */
+    private final long[] preRelease;
+    /**
+     * Alphanumeric pre-release identifiers, null at the index of numeric ones
+     */
+    private final String[] preReleaseIds;
+    /**
+     * Index of the first numeric component, 1 if the version string has a v prefix
+     */
+    private final int start;
+    /**
+     * Index after the last numeric component
+     */
+    private final int end;
+    /**
+     * Hash of everything compareTo looks at, so versions equal by compareTo share it
+     */
+    private final int hash;
 
     /**
      * Creates a version object
      *
-     * @param version the version string
+     * @param version the version string, optionally prefixed with a v
      */
     public Version(@NotNull String version) {
-        if (!version.matches("[0-9]+(\\.[0-9]+)*"))
-            throw new IllegalArgumentException("Invalid version format");
+        this(version, false);
+    }
 
-        this.version = version;
+    /**
+     * Creates a version object without any regex in one scan of the string. The numeric components and pre-release
+     * identifiers are parsed while they are validated, into arrays grown when a version has more of them than usual.
+     * Only alphanumeric pre-release identifiers are copied out of the string
+     *
+     * @param version          the version string, optionally prefixed with a v
+     * @param githubPrerelease if the version is marked as prerelease
+     */
+    public Version(@NotNull String version, boolean githubPrerelease) {
+        int length = version.length();
+        int start = length > 0 && version.charAt(0) == 'v' ? 1 : 0;
+        int i = start;
+
+        int[] parts = new int[3];
+        int count = 0;
+        long part = 0;
+        boolean digits = false;
+
+        for (; i < length; i++) {
+            char c = version.charAt(i);
+
+            if (c >= '0' && c <= '9') {
+                part = part * 10 + (c - '0');
+                digits = true;
+
+                if (part > Integer.MAX_VALUE)
+                    throw new NumberFormatException("Version component too big: " + version);
+            } else if (c == '.' && digits) {
+                if (count == parts.length)
+                    parts = Arrays.copyOf(parts, count * 2);
+                parts[count++] = (int) part;
+                part = 0;
+                digits = false;
+            } else if (c == '-' || c == '+') {
+                break;
+            } else
+                throw invalidFormat();
+        }
 
-        if (version.toLowerCase().endsWith("snapshot")) {
+        if (!digits)
+            throw invalidFormat();
+        if (count == parts.length)
+            parts = Arrays.copyOf(parts, count + 1);
+        parts[count++] = (int) part;
+
+        int end = i;
+        long[] preRelease = NO_PRE_RELEASE;
+        String[] preReleaseIds = NO_PRE_RELEASE_IDS;
+
+        if (i < length && version.charAt(i) == '-') {
+            preRelease = new long[2];
+            preReleaseIds = new String[2];
+            int identifiers = 0;
+            int from = ++i;
+            long value = 0;
+            boolean numeric = true;
+
+            for (; ; i++) {
+                char c = i < length ? version.charAt(i) : '+';
+
+                if (c == '.' || c == '+') {
+                    if (i == from)
+                        throw invalidFormat();
+
+                    if (identifiers == preRelease.length) {
+                        preRelease = Arrays.copyOf(preRelease, identifiers * 2);
+                        preReleaseIds = Arrays.copyOf(preReleaseIds, identifiers * 2);
+                    }
+
+                    if (numeric) {
+                        // semantic versioning forbids leading zeros in numeric identifiers
+                        if (i - from > 1 && version.charAt(from) == '0')
+                            throw invalidFormat();
+                        if (i - from > 18)
+                            throw new NumberFormatException("Pre-release identifier too big: " + version);
+                        preRelease[identifiers] = value;
+                    } else {
+                        preRelease[identifiers] = ALPHANUMERIC;
+                        preReleaseIds[identifiers] = version.substring(from, i);
+                    }
+                    identifiers++;
+
+                    if (c == '+')
+                        break;
+                    from = i + 1;
+                    value = 0;
+                    numeric = true;
+                } else if (c >= '0' && c <= '9') {
+                    value = value * 10 + (c - '0');
+                } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '-') {
+                    numeric = false;
+                } else
+                    throw invalidFormat();
+            }
+
+            if (identifiers != preRelease.length) {
+                preRelease = Arrays.copyOf(preRelease, identifiers);
+                preReleaseIds = Arrays.copyOf(preReleaseIds, identifiers);
+            }
+        }
+
+        if (i < length)
+            validateBuild(version, i + 1);
+
+        if (hasIdentifier(preReleaseIds, Type.SNAPSHOT)) {
             this.versionType = Type.SNAPSHOT;
-        } else if (version.toLowerCase().endsWith("dev")) {
+        } else if (preRelease.length > 0 || githubPrerelease) {
             this.versionType = Type.DEV;
         } else
             this.versionType = Type.RELEASE;
+
+        this.version = version;
+        this.start = start;
+        this.end = end;
+        this.parts = count == parts.length ? parts : Arrays.copyOf(parts, count);
+        this.preRelease = preRelease;
+        this.preReleaseIds = preReleaseIds;
+        this.hash = computeHash();
     }
 
     /**
-     * Creates a version object
+     * Computes the hash of the numeric components without trailing zeros and the pre-release identifiers
      *
-     * @param version          the version string
+     * @return the hash
+     */
+    private int computeHash() {
+        int hash = 1;
+
+        for (int i = 0, length = significantParts(); i < length; i++)
+            hash = 31 * hash + parts[i];
+
+        for (int i = 0; i < preRelease.length; i++)
+            hash = 31 * hash + (preRelease[i] == ALPHANUMERIC ? preReleaseIds[i].hashCode() : Long.hashCode(preRelease[i]));
+
+        return 31 * hash + preRelease.length;
+    }
+
+    /**
+     * Returns the number of numeric components without trailing zeros, which do not change the order
+     *
+     * @return the number of significant components
+     */
+    private int significantParts() {
+        int length = parts.length;
+        while (length > 0 && parts[length - 1] == 0)
+            length--;
+        return length;
+    }
+
+    /**
+     * Returns the canonical version object of a version string. Equal strings share one parsed object, so comparing
+     * them with equals short circuits on the identity
+     *
+     * @param version the version string, optionally prefixed with a v
+     * @return the canonical version object
+     */
+    static @NotNull Version of(@NotNull String version) {
+        return of(version, false);
+    }
+
+    /**
+     * Returns the canonical version object of a version string. Equal strings share one parsed object, so comparing
+     * them with equals short circuits on the identity
+     *
+     * @param version          the version string, optionally prefixed with a v
      * @param githubPrerelease if the version is marked as prerelease
+     * @return the canonical version object
      */
-    public Version(@NotNull String version, boolean githubPrerelease) {
-        if (!version.matches("[0-9]+(\\.[0-9]+)*"))
-            throw new IllegalArgumentException("Invalid version format! This could be due to not recognized tag ending. Supported format is: int.int.int...(-snapshot/dev)");
+    static @NotNull Version of(@NotNull String version, boolean githubPrerelease) {
+        Map<String, Version> interned = githubPrerelease ? INTERNED_PRERELEASE : INTERNED;
+        Version canonical = interned.get(version);
 
-        this.version = version;
+        if (canonical == null) {
+            if (interned.size() >= MAX_INTERNED)
+                interned.clear();
 
-        if (version.toLowerCase().endsWith("snapshot")) {
-            this.versionType = Type.SNAPSHOT;
-        } else if (version.toLowerCase().endsWith("dev") || githubPrerelease) {
-            this.versionType = Type.DEV;
-        } else
-            this.versionType = Type.RELEASE;
+            Version parsed = new Version(version, githubPrerelease);
+            canonical = interned.putIfAbsent(version, parsed);
+            if (canonical == null)
+                canonical = parsed;
+        }
+
+        return canonical;
+    }
+
+    /**
+     * Validates the dot separated build identifiers made of ascii letters, digits and hyphens
+     *
+     * @param version the version string
+     * @param from    index of the first build identifier
+     */
+    private static void validateBuild(@NotNull String version, int from) {
+        boolean empty = true;
+
+        for (int i = from, length = version.length(); i < length; i++) {
+            char c = version.charAt(i);
+
+            if (c == '.') {
+                if (empty)
+                    throw invalidFormat();
+                empty = true;
+            } else if ((c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '-') {
+                empty = false;
+            } else
+                throw invalidFormat();
+        }
+
+        if (empty)
+            throw invalidFormat();
+    }
+
+    /**
+     * Checks if an alphanumeric identifier is the suffix of a type, ignoring the case
+     *
+     * @param identifiers the alphanumeric pre-release identifiers
+     * @param type        the type with the suffix
+     * @return true if one identifier is the suffix
+     */
+    private static boolean hasIdentifier(@Nullable String @NotNull [] identifiers, @NotNull Type type) {
+        for (String identifier : identifiers) {
+            if (type.suffix.equalsIgnoreCase(identifier))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Creates the exception for a version string not matching the supported format
+     *
+     * @return the exception to throw
+     */
+    private static @NotNull IllegalArgumentException invalidFormat() {
+        return new IllegalArgumentException("Invalid version format! This could be due to not recognized tag ending. Supported format is: int.int.int...(-prerelease)(+build)");
     }
 
     /**
@@ -59,25 +317,57 @@ final class Version implements Comparable<Version> {
      */
     @Override
     public int compareTo(@NotNull Version latest) {
-        String[] usingVersionParts = this.get(false).split("\\.");
-        String[] latestVersionParts = latest.get(false).split("\\.");
+        int[] usingParts = this.parts;
+        int[] latestParts = latest.parts;
 
-        int length = Math.max(usingVersionParts.length, latestVersionParts.length);
+        int length = Math.max(usingParts.length, latestParts.length);
 
         for (int i = 0; i < length; i++) {
-
-            int usingPart = i < usingVersionParts.length ?
-                    Integer.parseInt(usingVersionParts[i]) : 0;
-
-            int latestPart = i < latestVersionParts.length ?
-                    Integer.parseInt(latestVersionParts[i]) : 0;
+            int usingPart = i < usingParts.length ? usingParts[i] : 0;
+            int latestPart = i < latestParts.length ? latestParts[i] : 0;
 
             if (usingPart < latestPart)
                 return -1;
             if (usingPart > latestPart)
                 return 1;
         }
-        return 0;
+        return comparePreRelease(latest);
+    }
+
+    /**
+     * Compares the pre-release identifiers by the semantic versioning precedence: a release is newer than a pre-release,
+     * numeric identifiers are older than alphanumeric ones and more identifiers are newer if all others are equal
+     *
+     * @param latest the version to be compared with
+     * @return Zero if the pre-releases are the same, -1 if the compared version is newer, 1 if the original version is newer
+     */
+    private int comparePreRelease(@NotNull Version latest) {
+        long[] using = this.preRelease;
+        long[] other = latest.preRelease;
+
+        if (using.length == 0 || other.length == 0)
+            return Integer.compare(other.length, using.length);
+
+        int length = Math.min(using.length, other.length);
+
+        for (int i = 0; i < length; i++) {
+            long usingId = using[i];
+            long latestId = other[i];
+
+            if (usingId != ALPHANUMERIC && latestId != ALPHANUMERIC) {
+                if (usingId != latestId)
+                    return usingId < latestId ? -1 : 1;
+            } else if (usingId != ALPHANUMERIC) {
+                return -1;
+            } else if (latestId != ALPHANUMERIC) {
+                return 1;
+            } else {
+                int compared = this.preReleaseIds[i].compareTo(latest.preReleaseIds[i]);
+                if (compared != 0)
+                    return compared < 0 ? -1 : 1;
+            }
+        }
+        return Integer.compare(using.length, other.length);
     }
 
     /**
@@ -86,7 +376,7 @@ final class Version implements Comparable<Version> {
      * @return the entire version string
      */
     public String get() {
-        return this.version;
+        return start == 0 ? this.version : this.version.substring(start);
     }
 
     /**
@@ -96,10 +386,29 @@ final class Version implements Comparable<Version> {
      * @return the version string with or without the suffix
      */
     public String get(boolean withSuffix) {
-        if (!withSuffix) {
-            return this.version.replace(this.versionType.getSuffix(true), "");
+        if (!withSuffix && end != this.version.length()) {
+            return this.version.substring(start, end);
         } else
-            return this.version;
+            return get();
+    }
+
+    /**
+     * Returns a numeric component of the version
+     *
+     * @param index index of the component
+     * @return the component, 0 if the version has less components
+     */
+    public int getPart(int index) {
+        return index < parts.length ? parts[index] : 0;
+    }
+
+    /**
+     * Returns the number of numeric components written in the version string
+     *
+     * @return the number of components
+     */
+    public int getPartCount() {
+        return parts.length;
     }
 
     /**
@@ -128,6 +437,52 @@ final class Version implements Comparable<Version> {
         return this.compareTo((Version) that) == 0;
     }
 
+    /**
+     * Returns the hash of this version, equal for all versions equal by compareTo
+     *
+     * @return the hash
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Returns a binary key with the same order as compareTo when compared with {@link Arrays#compareUnsigned(byte[], byte[])}.
+     * Each numeric component without the trailing zeros is written as 0x02 and four big endian bytes, the core ends with
+     * 0x01. A release follows with 0xFF, a pre-release with its identifiers and a closing 0x00: numeric identifiers as
+     * 0x01 and eight big endian bytes, alphanumeric ones as 0x02, their ascii bytes and 0x00
+     *
+     * @return the sort key
+     */
+    public byte @NotNull [] getSortKey() {
+        int significant = significantParts();
+        int size = significant * 5 + 2;
+
+        for (int i = 0; i < preRelease.length; i++)
+            size += preRelease[i] == ALPHANUMERIC ? preReleaseIds[i].length() + 2 : 9;
+
+        ByteBuffer key = ByteBuffer.allocate(size);
+
+        for (int i = 0; i < significant; i++)
+            key.put((byte) 0x02).putInt(parts[i]);
+        key.put((byte) 0x01);
+
+        if (preRelease.length == 0) {
+            key.put((byte) 0xFF);
+        } else {
+            for (int i = 0; i < preRelease.length; i++) {
+                if (preRelease[i] == ALPHANUMERIC) {
+                    key.put((byte) 0x02).put(preReleaseIds[i].getBytes(StandardCharsets.US_ASCII)).put((byte) 0x00);
+                } else
+                    key.put((byte) 0x01).putLong(preRelease[i]);
+            }
+            key.put((byte) 0x00);
+        }
+
+        return key.array();
+    }
+
     /**
      * Version type of this release
      */
@@ -0,0 +1,278 @@
+package de.sage.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Version range compiled once into a tree of comparisons against pre-parsed versions, so matching a version is only a
+ * few integer compares.
+ * <p>
+ * Supported syntax: comparators separated by spaces or commas must all match, alternatives are separated by
+ * <code>||</code>. A comparator is <code>&gt;=</code>, <code>&gt;</code>, <code>&lt;=</code>, <code>&lt;</code> or
+ * <code>=</code> followed by a version, a plain version for an exact match, <code>~1.4</code> for the same minor
+ * version (same major version for <code>~1</code>), <code>^1.4</code> for the same left most non-zero component or
+ * <code>*</code> for any version. Example: <code>&gt;=2.3 &lt;3.0 || ~4.1</code>. An empty constraint or alternative is
+ * rejected, any version has to be asked for with <code>*</code>
+ * <p>
+ * Exclusive upper bounds exclude the pre-releases of the bound too, like <code>~</code> and <code>^</code>:
+ * <code>&lt;3.0</code> does not match <code>3.0.0-rc.1</code>, while <code>&lt;3.0.0-rc.2</code> does
+ *
+ * @author SageSphinx63920
+ */
+public final class VersionConstraint {
+
+    private final @NotNull String constraint;
+    private final @NotNull Node root;
+
+    /**
+     * Creates a compiled constraint
+     *
+     * @param constraint the source of the constraint
+     * @param root       the compiled tree
+     */
+    private VersionConstraint(@NotNull String constraint, @NotNull Node root) {
+        this.constraint = constraint;
+        this.root = root;
+    }
+
+    /**
+     * Compiles a constraint
+     *
+     * @param constraint the constraint, for example <code>&gt;=2.3 &lt;3.0</code>
+     * @return the compiled constraint
+     * @throws IllegalArgumentException throws if the constraint or one of its versions is invalid or an alternative is empty
+     */
+    public static @NotNull VersionConstraint parse(@NotNull String constraint) {
+        List<Node> alternatives = new ArrayList<>();
+        int from = 0;
+
+        while (true) {
+            int to = constraint.indexOf("||", from);
+            alternatives.add(parseSet(constraint, from, to < 0 ? constraint.length() : to));
+
+            if (to < 0)
+                break;
+            from = to + 2;
+        }
+
+        Node root = alternatives.size() == 1 ? alternatives.get(0) : new Any(alternatives.toArray(new Node[0]));
+        return new VersionConstraint(constraint, root);
+    }
+
+    /**
+     * Checks if a version is inside the range
+     *
+     * @param version the version string, optionally prefixed with a v
+     * @return true if the version matches the constraint
+     */
+    public boolean matches(@NotNull String version) {
+        return matches(Version.of(version));
+    }
+
+    /**
+     * Checks if a version is inside the range. Prefer this over {@link #matches(String)} for many candidates, it does not parse
+     *
+     * @param version the version
+     * @return true if the version matches the constraint
+     */
+    public boolean matches(@NotNull Version version) {
+        return root.matches(version);
+    }
+
+    @Override
+    public String toString() {
+        return constraint;
+    }
+
+    /**
+     * Compiles comparators that all have to match
+     *
+     * @param constraint the constraint
+     * @param from       index of the first comparator
+     * @param to         index after the last comparator
+     * @return the compiled comparators
+     */
+    private static @NotNull Node parseSet(@NotNull String constraint, int from, int to) {
+        List<Node> comparators = new ArrayList<>();
+        int i = from;
+
+        while (true) {
+            while (i < to && isSeparator(constraint.charAt(i)))
+                i++;
+            if (i >= to)
+                break;
+
+            int operatorStart = i;
+            while (i < to && "<>=~^".indexOf(constraint.charAt(i)) >= 0)
+                i++;
+            String operator = constraint.substring(operatorStart, i);
+
+            while (i < to && constraint.charAt(i) == ' ')
+                i++;
+
+            int versionStart = i;
+            while (i < to && !isSeparator(constraint.charAt(i)))
+                i++;
+            String version = constraint.substring(versionStart, i);
+
+            if (version.isEmpty())
+                throw new IllegalArgumentException("Missing version after '" + operator + "' in constraint: " + constraint);
+
+            comparators.add(parseComparator(operator, version, constraint));
+        }
+
+        if (comparators.isEmpty())
+            throw new IllegalArgumentException("Empty alternative in constraint, use '*' to match any version: " + constraint);
+
+        return comparators.size() == 1 ? comparators.get(0) : new All(comparators.toArray(new Node[0]));
+    }
+
+    /**
+     * Compiles one comparator
+     *
+     * @param operator   the operator, can be empty
+     * @param version    the version string of the comparator
+     * @param constraint the constraint, used for error messages
+     * @return the compiled comparator
+     */
+    private static @NotNull Node parseComparator(@NotNull String operator, @NotNull String version, @NotNull String constraint) {
+        if (version.equals("*") || version.equalsIgnoreCase("x")) {
+            if (!operator.isEmpty())
+                throw new IllegalArgumentException("Wildcards take no operator in constraint: " + constraint);
+            return any -> true;
+        }
+
+        Version bound = Version.of(version);
+
+        return switch (operator) {
+            case ">=" -> new Comparison(bound, 0, 1);
+            case ">" -> new Comparison(bound, 1, 1);
+            case "<=" -> new Comparison(bound, -1, 0);
+            case "<" -> new Comparison(bound.getVersionType() == Version.Type.RELEASE ? upperBound(bound) : bound, -1, -1);
+            case "", "=", "==" -> new Comparison(bound, 0, 0);
+            case "~" -> new All(new Node[]{new Comparison(bound, 0, 1), new Comparison(tildeUpperBound(bound), -1, -1)});
+            case "^" -> new All(new Node[]{new Comparison(bound, 0, 1), new Comparison(caretUpperBound(bound), -1, -1)});
+            default -> throw new IllegalArgumentException("Unknown operator '" + operator + "' in constraint: " + constraint);
+        };
+    }
+
+    /**
+     * Returns the exclusive upper bound of a tilde range: the next minor version, or the next major version if only the major version is given
+     *
+     * @param version the lower bound of the range
+     * @return the upper bound
+     */
+    private static @NotNull Version tildeUpperBound(@NotNull Version version) {
+        if (version.getPartCount() < 2)
+            return upperBound(version.getPart(0) + 1, 0, 0);
+        return upperBound(version.getPart(0), version.getPart(1) + 1, 0);
+    }
+
+    /**
+     * Returns the exclusive upper bound of a caret range: the next version of the left most non-zero component
+     *
+     * @param version the lower bound of the range
+     * @return the upper bound
+     */
+    private static @NotNull Version caretUpperBound(@NotNull Version version) {
+        if (version.getPart(0) != 0 || version.getPartCount() < 2)
+            return upperBound(version.getPart(0) + 1, 0, 0);
+        if (version.getPart(1) != 0 || version.getPartCount() < 3)
+            return upperBound(0, version.getPart(1) + 1, 0);
+        return upperBound(0, 0, version.getPart(2) + 1);
+    }
+
+    /**
+     * Creates the exclusive upper bound of a release
+     *
+     * @param release the release
+     * @return the lowest pre-release of the release, so pre-releases of the release are excluded too
+     */
+    private static @NotNull Version upperBound(@NotNull Version release) {
+        return Version.of(release.get(false) + "-0");
+    }
+
+    /**
+     * Creates an exclusive upper bound. It is the lowest pre-release of the version, so pre-releases of the bound are excluded too
+     *
+     * @param major major version
+     * @param minor minor version
+     * @param patch patch version
+     * @return the upper bound
+     */
+    private static @NotNull Version upperBound(int major, int minor, int patch) {
+        return Version.of(major + "." + minor + "." + patch + "-0");
+    }
+
+    /**
+     * Checks if a character separates comparators
+     *
+     * @param c the character
+     * @return true if it is a space or comma
+     */
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == ',' || c == '\t';
+    }
+
+    /**
+     * Node of the compiled constraint
+     */
+    private interface Node {
+        /**
+         * Checks if a version matches this node
+         *
+         * @param version the version
+         * @return true if the version matches
+         */
+        boolean matches(@NotNull Version version);
+    }
+
+    /**
+     * Compares the version with a bound. The version matches if the result of compareTo is between min and max
+     *
+     * @param bound the pre-parsed bound
+     * @param min   lowest accepted result of version.compareTo(bound)
+     * @param max   highest accepted result of version.compareTo(bound)
+     */
+    private record Comparison(@NotNull Version bound, int min, int max) implements Node {
+        @Override
+        public boolean matches(@NotNull Version version) {
+            int compared = version.compareTo(bound);
+            return compared >= min && compared <= max;
+        }
+    }
+
+    /**
+     * Matches if all children match
+     *
+     * @param children the children
+     */
+    private record All(@NotNull Node @NotNull [] children) implements Node {
+        @Override
+        public boolean matches(@NotNull Version version) {
+            for (Node child : children) {
+                if (!child.matches(version))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Matches if any child matches
+     *
+     * @param children the children
+     */
+    private record Any(@NotNull Node @NotNull [] children) implements Node {
+        @Override
+        public boolean matches(@NotNull Version version) {
+            for (Node child : children) {
+                if (child.matches(version))
+                    return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package de.sage.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Budgets, skipping and failure reporting of {@link FallbackChain}
+ */
+class FallbackChainTest {
+
+    @Test
+    void firstResultWins() {
+        AtomicInteger started = new AtomicInteger();
+
+        CompletableFuture<String> result = new FallbackChain<String>()
+                .then(() -> {
+                    started.incrementAndGet();
+                    return CompletableFuture.completedFuture("first");
+                }, null)
+                .then(() -> {
+                    started.incrementAndGet();
+                    return CompletableFuture.completedFuture("second");
+                }, null)
+                .start();
+
+        assertEquals("first", result.join());
+        assertEquals(1, started.get());
+    }
+
+    @Test
+    void budgetTimeoutFallsThroughAndCancelsTheSource() {
+        CompletableFuture<String> slow = new CompletableFuture<>();
+
+        String result = new FallbackChain<String>()
+                .then(() -> slow, Duration.ofMillis(50))
+                .then(() -> CompletableFuture.completedFuture("fallback"), null)
+                .start()
+                .orTimeout(5, TimeUnit.SECONDS)
+                .join();
+
+        assertEquals("fallback", result);
+        CompletionException thrown = assertThrows(CompletionException.class, slow::join, "slow source still running");
+        assertInstanceOf(TimeoutException.class, thrown.getCause());
+    }
+
+    @Test
+    void nullSourceIsSkipped() {
+        String result = new FallbackChain<String>()
+                .then(() -> null, null)
+                .then(() -> CompletableFuture.completedFuture("second"), null)
+                .start()
+                .join();
+
+        assertEquals("second", result);
+    }
+
+    @Test
+    void firstFailureKeepsTheLaterOnesAsSuppressed() {
+        IOException first = new IOException("first");
+        IOException second = new IOException("second");
+        IllegalStateException third = new IllegalStateException("third");
+
+        CompletableFuture<String> result = new FallbackChain<String>()
+                .then(() -> CompletableFuture.failedFuture(first), null)
+                .then(() -> CompletableFuture.failedFuture(second), null)
+                .then(() -> {
+                    throw third;
+                }, null)
+                .start();
+
+        CompletionException thrown = assertThrows(CompletionException.class, result::join);
+        assertSame(first, thrown.getCause());
+        assertArrayEquals(new Throwable[]{second, third}, first.getSuppressed());
+    }
+
+    @Test
+    void chainWithoutSourceFails() {
+        CompletableFuture<String> result = new FallbackChain<String>()
+                .then(() -> null, null)
+                .start();
+
+        CompletionException thrown = assertThrows(CompletionException.class, result::join);
+        assertInstanceOf(IllegalStateException.class, thrown.getCause());
+    }
+
+    @Test
+    void cancellingTheResultCancelsTheRunningSource() {
+        CompletableFuture<String> running = new CompletableFuture<>();
+        AtomicInteger started = new AtomicInteger();
+
+        CompletableFuture<String> result = new FallbackChain<String>()
+                .then(() -> running, null)
+                .then(() -> {
+                    started.incrementAndGet();
+                    return CompletableFuture.completedFuture("fallback");
+                }, null)
+                .start();
+
+        result.cancel(true);
+
+        assertTrue(running.isCancelled());
+        assertEquals(0, started.get(), "chain went on after it was cancelled");
+    }
+}
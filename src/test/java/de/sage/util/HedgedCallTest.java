@@ -0,0 +1,76 @@
+package de.sage.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Refill and cap of the global hedge budget of {@link HedgedCall}
+ */
+class HedgedCallTest {
+
+    @BeforeEach
+    void drainBudget() {
+        while (HedgedCall.reserveHedge())
+            ;
+    }
+
+    @AfterEach
+    void restoreRatio() {
+        HedgedCall.setMaxRatio(0.05);
+        drainBudget();
+    }
+
+    @Test
+    void sentRequestsRefillTheBudgetByTheRatio() {
+        HedgedCall.setMaxRatio(0.25);
+
+        for (int i = 0; i < 3; i++)
+            HedgedCall.requestSent();
+        assertFalse(HedgedCall.reserveHedge(), "hedge granted before 4 requests were sent");
+
+        HedgedCall.requestSent();
+        assertTrue(HedgedCall.reserveHedge());
+        assertFalse(HedgedCall.reserveHedge(), "second hedge granted for 4 requests");
+    }
+
+    @Test
+    void budgetIsCappedToTheBurst() {
+        HedgedCall.setMaxRatio(1);
+
+        for (int i = 0; i < 1000; i++)
+            HedgedCall.requestSent();
+
+        for (int i = 0; i < HedgedCall.MAX_BURST; i++)
+            assertTrue(HedgedCall.reserveHedge(), "hedge " + i + " of the burst not granted");
+        assertFalse(HedgedCall.reserveHedge(), "quiet period saved up more than the burst");
+    }
+
+    @Test
+    void givenBackHedgeCanBeReservedAgain() {
+        HedgedCall.addBudget(HedgedCall.HEDGE_COST);
+
+        assertTrue(HedgedCall.reserveHedge());
+        assertFalse(HedgedCall.reserveHedge());
+
+        HedgedCall.addBudget(HedgedCall.HEDGE_COST);
+        assertTrue(HedgedCall.reserveHedge());
+    }
+
+    @Test
+    void zeroRatioNeverHedges() {
+        HedgedCall.setMaxRatio(0);
+
+        for (int i = 0; i < 1000; i++)
+            HedgedCall.requestSent();
+        assertFalse(HedgedCall.reserveHedge());
+    }
+
+    @Test
+    void rejectsRatioOutsideZeroToOne() {
+        assertThrows(IllegalArgumentException.class, () -> HedgedCall.setMaxRatio(-0.1));
+        assertThrows(IllegalArgumentException.class, () -> HedgedCall.setMaxRatio(1.1));
+    }
+}
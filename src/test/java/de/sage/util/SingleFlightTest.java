@@ -0,0 +1,104 @@
+package de.sage.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Coalescing and reference counted cancellation of {@link SingleFlight}
+ */
+class SingleFlightTest {
+
+    @Test
+    void concurrentCallersShareOneRequest() {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        CompletableFuture<String> request = new CompletableFuture<>();
+        AtomicInteger started = new AtomicInteger();
+
+        CompletableFuture<String> first = flights.join("key", () -> {
+            started.incrementAndGet();
+            return request;
+        });
+        CompletableFuture<String> second = flights.join("key", () -> {
+            started.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+
+        request.complete("result");
+
+        assertEquals(1, started.get());
+        assertEquals("result", first.join());
+        assertEquals("result", second.join());
+    }
+
+    @Test
+    void onlyTheLastCallerDetachingCancelsTheRequest() {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        CompletableFuture<String> request = new CompletableFuture<>();
+
+        CompletableFuture<String> first = flights.join("key", () -> request);
+        CompletableFuture<String> second = flights.join("key", CompletableFuture::new);
+
+        first.cancel(true);
+        assertFalse(request.isDone(), "request cancelled while a caller is attached");
+
+        second.cancel(true);
+        assertTrue(request.isCancelled(), "request not cancelled after the last caller detached");
+    }
+
+    @Test
+    void detachedCallerDoesNotFailTheOthers() {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        CompletableFuture<String> request = new CompletableFuture<>();
+
+        CompletableFuture<String> first = flights.join("key", () -> request);
+        CompletableFuture<String> second = flights.join("key", CompletableFuture::new);
+
+        first.cancel(true);
+        request.complete("result");
+
+        assertTrue(first.isCancelled());
+        assertEquals("result", second.join());
+    }
+
+    @Test
+    void callerAfterCompletionStartsANewRequest() {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        AtomicInteger started = new AtomicInteger();
+
+        CompletableFuture<String> first = flights.join("key", () -> CompletableFuture.completedFuture("first" + started.incrementAndGet()));
+        CompletableFuture<String> second = flights.join("key", () -> CompletableFuture.completedFuture("second" + started.incrementAndGet()));
+
+        assertEquals("first1", first.join());
+        assertEquals("second2", second.join());
+    }
+
+    @Test
+    void callerAfterCancellationStartsANewRequest() {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        CompletableFuture<String> cancelled = new CompletableFuture<>();
+        CompletableFuture<String> next = new CompletableFuture<>();
+
+        flights.join("key", () -> cancelled).cancel(true);
+        CompletableFuture<String> second = flights.join("key", () -> next);
+
+        assertTrue(cancelled.isCancelled());
+        next.complete("result");
+        assertEquals("result", second.join());
+    }
+
+    @Test
+    void failureOfTheStartIsPassedOn() {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+
+        CompletableFuture<String> failed = flights.join("key", () -> {
+            throw new IllegalStateException("start failed");
+        });
+
+        assertTrue(failed.isCompletedExceptionally());
+        assertEquals("result", flights.join("key", () -> CompletableFuture.completedFuture("result")).join());
+    }
+}
@@ -0,0 +1,104 @@
+package de.sage.util;
+
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Backoff, jitter and wait times asked for by github of {@link UpdateScheduler}
+ */
+class UpdateSchedulerTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    void backsOffExponentiallyUpToTheMaximum() {
+        UpdateScheduler scheduler = new UpdateScheduler(Duration.ofSeconds(10), 0, Duration.ofSeconds(100));
+        IOException failure = new IOException("failed");
+
+        assertEquals(10_000, scheduler.nextDelay(0, null));
+        assertEquals(10_000, scheduler.nextDelay(1, failure));
+        assertEquals(20_000, scheduler.nextDelay(2, failure));
+        assertEquals(80_000, scheduler.nextDelay(4, failure));
+        assertEquals(100_000, scheduler.nextDelay(5, failure));
+    }
+
+    @Test
+    void backoffDoesNotOverflow() {
+        UpdateScheduler scheduler = new UpdateScheduler(Duration.ofDays(1), 0, Duration.ofDays(365));
+
+        for (int failures : new int[]{40, 63, 64, 1000, Integer.MAX_VALUE})
+            assertEquals(Duration.ofDays(365).toMillis(), scheduler.nextDelay(failures, new IOException("failed")), failures + " failures");
+    }
+
+    @Test
+    void jitterStaysInsideItsShare() {
+        UpdateScheduler scheduler = new UpdateScheduler(Duration.ofSeconds(10), 0.1, Duration.ofSeconds(100));
+
+        for (int i = 0; i < 1000; i++) {
+            long delay = scheduler.nextDelay(0, null);
+            assertTrue(delay >= 9_000 && delay <= 11_000, delay + " outside of the jitter");
+        }
+    }
+
+    @Test
+    void waitsAtLeastTheRetryAfter() {
+        UpdateScheduler scheduler = new UpdateScheduler(Duration.ofSeconds(10), 0, Duration.ofSeconds(100));
+
+        UpdateCheckException longWait = new UpdateCheckException("rate limited", 429, Duration.ofMinutes(30));
+        assertEquals(Duration.ofMinutes(30).toMillis(), scheduler.nextDelay(1, longWait));
+
+        UpdateCheckException shortWait = new UpdateCheckException("rate limited", 429, Duration.ofSeconds(1));
+        assertEquals(10_000, scheduler.nextDelay(1, shortWait));
+    }
+
+    @Test
+    void readsTheRetryAfterHeaders() {
+        assertEquals(Duration.ofSeconds(120), UpdateCheckException.retryAfter(response(429, "Retry-After", " 120 "), NOW));
+
+        String date = DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(NOW + 90_000).atOffset(ZoneOffset.UTC));
+        assertEquals(Duration.ofSeconds(90), UpdateCheckException.retryAfter(response(503, "Retry-After", date), NOW));
+
+        Response reset = response(403, "X-RateLimit-Remaining", "0").newBuilder()
+                .header("X-RateLimit-Reset", String.valueOf(NOW / 1000 + 60)).build();
+        assertEquals(Duration.ofSeconds(60), UpdateCheckException.retryAfter(reset, NOW));
+
+        String past = DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(NOW - 90_000).atOffset(ZoneOffset.UTC));
+        assertEquals(Duration.ZERO, UpdateCheckException.retryAfter(response(503, "Retry-After", past), NOW));
+        assertNull(UpdateCheckException.retryAfter(response(500, "Retry-After", "soon"), NOW));
+    }
+
+    @Test
+    void rejectsInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new UpdateScheduler(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> new UpdateScheduler(Duration.ofSeconds(10), 1.5, Duration.ofSeconds(100)));
+        assertThrows(IllegalArgumentException.class, () -> new UpdateScheduler(Duration.ofSeconds(10), 0.1, Duration.ofSeconds(5)));
+    }
+
+    /**
+     * Creates a response of github with one header
+     *
+     * @param code   the status code
+     * @param header the name of the header
+     * @param value  the value of the header
+     * @return the response
+     */
+    private static Response response(int code, String header, String value) {
+        return new Response.Builder()
+                .request(new Request.Builder().url("https://api.github.com/repos/owner/repo/releases/latest").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("Error")
+                .header(header, value)
+                .build();
+    }
+}
@@ -0,0 +1,67 @@
+package de.sage.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Truth table of {@link VersionConstraint}
+ */
+class VersionConstraintTest {
+
+    private static final List<String> CANDIDATES = List.of(
+            "1.9.9", "2.2.9", "2.3.0-rc.1", "2.3", "2.3.5", "2.4.0-beta", "2.4.0", "2.9.9", "3.0.0-rc.1", "3.0.0", "3.0.1", "4.1.0", "4.1.7", "4.2.0");
+
+    @Test
+    void matchesTheTruthTable() {
+        assertTable(">=2.3 <3.0", "2.3", "2.3.5", "2.4.0-beta", "2.4.0", "2.9.9");
+        assertTable(">2.3, <=3.0", "2.3.5", "2.4.0-beta", "2.4.0", "2.9.9", "3.0.0-rc.1", "3.0.0");
+        assertTable("~2.3", "2.3", "2.3.5");
+        assertTable("~2", "2.2.9", "2.3.0-rc.1", "2.3", "2.3.5", "2.4.0-beta", "2.4.0", "2.9.9");
+        assertTable("^2.3", "2.3", "2.3.5", "2.4.0-beta", "2.4.0", "2.9.9");
+        assertTable("=2.3.0", "2.3");
+        assertTable("2.3.5", "2.3.5");
+        assertTable("<3.0.0-rc.2", "1.9.9", "2.2.9", "2.3.0-rc.1", "2.3", "2.3.5", "2.4.0-beta", "2.4.0", "2.9.9", "3.0.0-rc.1");
+        assertTable(">=2.3 <3.0 || ~4.1", "2.3", "2.3.5", "2.4.0-beta", "2.4.0", "2.9.9", "4.1.0", "4.1.7");
+        assertTable("*", CANDIDATES.toArray(new String[0]));
+    }
+
+    @Test
+    void caretStaysInsideTheLeftMostNonZeroComponent() {
+        VersionConstraint minor = VersionConstraint.parse("^0.3.1");
+        assertTrue(minor.matches("0.3.9"));
+        assertFalse(minor.matches("0.4.0-rc.1"));
+        assertFalse(minor.matches("0.4.0"));
+
+        VersionConstraint patch = VersionConstraint.parse("^0.0.3");
+        assertTrue(patch.matches("0.0.3"));
+        assertFalse(patch.matches("0.0.4"));
+    }
+
+    @Test
+    void rejectsInvalidConstraints() {
+        for (String invalid : List.of(">=", "~", ">=*", "=>2.0", "<<2.0", ">=2.x.y", ">=2.0 ||", "|| <3", "", " , ",
+                ">=2.0 |||| <1.0"))
+            assertThrows(IllegalArgumentException.class, () -> VersionConstraint.parse(invalid), invalid);
+    }
+
+    /**
+     * Asserts that a constraint matches exactly the given candidates, both as strings and as parsed versions
+     *
+     * @param constraint the constraint
+     * @param matching   the candidates that match
+     */
+    private static void assertTable(String constraint, String... matching) {
+        VersionConstraint compiled = VersionConstraint.parse(constraint);
+        List<String> expected = List.of(matching);
+
+        for (String candidate : CANDIDATES) {
+            boolean matches = expected.contains(candidate);
+
+            assertEquals(matches, compiled.matches(candidate), constraint + " matching " + candidate);
+            assertEquals(matches, compiled.matches(new Version(candidate)), constraint + " matching " + candidate);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package de.sage.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Invariants of {@link Version}: the semantic versioning precedence, the sort key ordering like compareTo and the hash
+ * being equal for versions equal by compareTo
+ */
+class VersionTest {
+
+    /**
+     * Versions in ascending order, including the precedence example of the semantic versioning specification §11
+     */
+    private static final List<String> ASCENDING = List.of(
+            "0.9", "1.0.0-0", "1.0.0-1", "1.0.0-2", "1.0.0-10", "1.0.0-alpha", "1.0.0-alpha.1", "1.0.0-alpha.beta",
+            "1.0.0-beta", "1.0.0-beta.2", "1.0.0-beta.11", "1.0.0-rc.1", "1.0.0", "1.0.1", "1.1", "1.10", "2.0.0-SNAPSHOT",
+            "2.0.0", "2.1.0", "2.1.1", "10.0");
+
+    @Test
+    void comparesBySemanticVersioningPrecedence() {
+        for (int i = 0; i < ASCENDING.size(); i++) {
+            for (int j = 0; j < ASCENDING.size(); j++) {
+                Version left = new Version(ASCENDING.get(i));
+                Version right = new Version(ASCENDING.get(j));
+
+                assertEquals(Integer.signum(Integer.compare(i, j)), left.compareTo(right), left + " compared to " + right);
+            }
+        }
+    }
+
+    @Test
+    void sortKeyOrdersLikeCompareTo() {
+        List<String> versions = new ArrayList<>(ASCENDING);
+        versions.addAll(List.of("1", "1.0", "1.0.0", "1.0.0+build.5", "v1.0.0", "1.0.0-rc.1+b", "1.0.0-rc", "1.0.0-rc.a",
+                "1.0.0-rc.1.1", "1.0.0-rc-1", "1.0.0-RC.1", "0.0.1", "1.2147483647", "1.0.0-999999999999999999"));
+
+        for (String first : versions) {
+            for (String second : versions) {
+                Version left = new Version(first);
+                Version right = new Version(second);
+
+                assertEquals(left.compareTo(right), Integer.signum(Arrays.compareUnsigned(left.getSortKey(), right.getSortKey())),
+                        first + " compared to " + second);
+            }
+        }
+    }
+
+    @Test
+    void equalVersionsShareTheHash() {
+        assertEquals(new Version("1.0"), new Version("1.0.0+build"));
+        assertEquals(new Version("1.0").hashCode(), new Version("1.0.0+build").hashCode());
+        assertEquals(new Version("v1").hashCode(), new Version("1.0.0").hashCode());
+        assertEquals(new Version("1.0-rc.1").hashCode(), new Version("1.0.0-rc.1+b.2").hashCode());
+
+        assertNotEquals(new Version("1.0"), new Version("1.0.0-rc.1"));
+        assertNotEquals(new Version("1.0.1"), new Version("1.0"));
+    }
+
+    @Test
+    void rejectsInvalidVersions() {
+        for (String invalid : List.of("", "v", "1.", ".1", "1..0", "1.0-", "1.0-a..b", "1.0+", "a.b", "1.0-a_b", "1.0.0-01",
+                "1.0.0-rc.00"))
+            assertThrows(IllegalArgumentException.class, () -> new Version(invalid), invalid);
+    }
+}